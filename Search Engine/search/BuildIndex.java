@@ -0,0 +1,28 @@
+package search;
+
+import search.index.SearchIndex;
+import search.index.SegmentWriter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Indexes every page in a data folder and saves the result as an index segment,
+ * which Main can then open in seconds instead of re-indexing on every start.
+ *
+ * Run this again whenever the pages in the data folder change.
+ */
+public class BuildIndex {
+    public static void main(String[] args) throws IOException {
+        String dataFolderName = args.length > 0 ? args[0] : Main.DATA_FOLDER_NAME;
+
+        System.out.println("Indexing web pages...");
+        SearchIndex index = SearchEngine.indexDataFolder(dataFolderName);
+
+        long start = System.currentTimeMillis();
+        Path segmentPath = SearchEngine.getSegmentPath(dataFolderName);
+        SegmentWriter.write(index, segmentPath);
+        long end = System.currentTimeMillis() - start;
+        System.out.println("Done writing " + segmentPath + " (" + (end / 1000.0) + " sec)");
+    }
+}
@@ -1,5 +1,9 @@
 package search;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 public class Main {
     // The dataset to index and search.
     // MUST be the name of one of the folders in the 'data' folder.
@@ -13,9 +17,18 @@ public class Main {
     // and know what ports are, feel free to change this if it's convenient.
     public static final int PORT = 8080;
 
-    public static void main(String[] args) {
-        System.out.println("Indexing web pages...");
-        SearchEngine engine = new SearchEngine(DATA_FOLDER_NAME);
+    public static void main(String[] args) throws IOException {
+        // If BuildIndex has already saved an index of the dataset, we use it;
+        // otherwise, we index every page from scratch.
+        SearchEngine engine;
+        Path segmentPath = SearchEngine.getSegmentPath(DATA_FOLDER_NAME);
+        if (Files.exists(segmentPath)) {
+            System.out.println("Opening index " + segmentPath + "...");
+            engine = SearchEngine.open(segmentPath);
+        } else {
+            System.out.println("Indexing web pages...");
+            engine = new SearchEngine(DATA_FOLDER_NAME);
+        }
 
         System.out.println("Setting up web server...");
         Webapp app = new Webapp(engine, SITE_TITLE, PORT);
@@ -0,0 +1,280 @@
+package search;
+
+import datastructures.concrete.dictionaries.ChainedHashDictionary;
+import datastructures.interfaces.IDictionary;
+import datastructures.interfaces.IList;
+import search.models.Result;
+
+/**
+ * Remembers the results of recent queries, so popular queries are only answered
+ * once per version of the index (see LiveIndex.getVersion()).
+ *
+ * Results are looked up by the words of the query (as WordTokenizer.extract()
+ * returns them) and k. Every result list is tagged with the version of the index
+ * it was computed for, and the whole cache is emptied the first time it is used
+ * with a newer version, so it never hands out results the index has moved past.
+ *
+ * At most 'capacity' result lists are kept. When the cache is full, the least
+ * recently used list is evicted, but only to make room for a query asked more
+ * often than it: a burst of queries nobody asks twice would otherwise flush out
+ * the popular ones. How often every query was asked recently is estimated with
+ * a count-min sketch, a few rows of counters indexed by different hashes of the
+ * query, whose smallest counter is an upper bound on the count. The counters are
+ * halved every 10 * capacity queries, so queries that stop being popular are
+ * eventually forgotten.
+ *
+ * All methods are safe to call from many threads at once. Callers must not modify
+ * the lists this cache returns, since they are shared.
+ */
+public class QueryCache {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int[] SKETCH_SEEDS = {0x2545f491, 0x61c88647, 0x3c6ef372, 0x7f4a7c15};
+
+    /**
+     * The results of a query, in the list of entries from most to least recently used.
+     */
+    private static class Entry {
+        private final String key;
+        private final IList<Result> results;
+        private Entry newer;
+        private Entry older;
+
+        public Entry(String key, IList<Result> results) {
+            this.key = key;
+            this.results = results;
+        }
+    }
+
+    private final int capacity;
+    private IDictionary<String, Entry> entries;
+    private Entry newest;
+    private Entry oldest;
+    // The version of the index every entry was computed for.
+    private long version;
+
+    private final int[][] sketch;
+    private final int sketchMask;
+    private int sketchAdditions;
+
+    private long hitCount;
+    private long missCount;
+    private long rejectionCount;
+
+    public QueryCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @throws IllegalArgumentException  if the capacity is less than 1
+     */
+    public QueryCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.entries = new ChainedHashDictionary<>();
+        this.newest = null;
+        this.oldest = null;
+        this.version = 0;
+
+        // About 8 counters per entry (rounded up to a power of two) keeps the
+        // estimates of the popular queries close to their real counts.
+        int width = Integer.highestOneBit(Math.max(1, 8 * capacity - 1)) << 1;
+        this.sketch = new int[SKETCH_SEEDS.length][width];
+        this.sketchMask = width - 1;
+        this.sketchAdditions = 0;
+
+        this.hitCount = 0;
+        this.missCount = 0;
+        this.rejectionCount = 0;
+    }
+
+    /**
+     * Returns the cached top k results of the given query as of the given version of
+     * the index, or null if they are not cached.
+     */
+    public synchronized IList<Result> get(IList<String> query, int k, long version) {
+        String key = makeKey(query, k);
+        this.recordAccess(key);
+        this.checkVersion(version);
+        Entry entry = version == this.version ? this.entries.getOrDefault(key, null) : null;
+        if (entry == null) {
+            this.missCount++;
+            return null;
+        }
+        this.hitCount++;
+        this.unlink(entry);
+        this.linkNewest(entry);
+        return entry.results;
+    }
+
+    /**
+     * Caches the top k results of the given query, computed for the given version of
+     * the index (read before computing them). The results may not be kept: if the
+     * cache is full, they are only kept when their query has been asked more often
+     * recently than the least recently used query in the cache.
+     */
+    public synchronized void put(IList<String> query, int k, long version, IList<Result> results) {
+        this.checkVersion(version);
+        if (version != this.version) {
+            // Computed for an index that has changed since.
+            return;
+        }
+        String key = makeKey(query, k);
+        Entry old = this.entries.getOrDefault(key, null);
+        if (old != null) {
+            this.unlink(old);
+        } else if (this.entries.size() == this.capacity) {
+            if (this.estimateCount(key) <= this.estimateCount(this.oldest.key)) {
+                this.rejectionCount++;
+                return;
+            }
+            this.entries.remove(this.oldest.key);
+            this.unlink(this.oldest);
+        }
+        Entry entry = new Entry(key, results);
+        this.entries.put(key, entry);
+        this.linkNewest(entry);
+    }
+
+    /**
+     * Empties the cache if the given version of the index is newer than that of its
+     * entries.
+     */
+    private void checkVersion(long version) {
+        if (version > this.version) {
+            this.entries = new ChainedHashDictionary<>();
+            this.newest = null;
+            this.oldest = null;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Returns the key the results of the given query are cached under. Words never
+     * contain spaces, so different queries get different keys.
+     */
+    static String makeKey(IList<String> query, int k) {
+        StringBuilder key = new StringBuilder();
+        key.append(k);
+        for (String word : query) {
+            key.append(' ').append(word);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the counter of the given row of the sketch the given key goes to.
+     */
+    private int getSketchIndex(String key, int row) {
+        int hash = (key.hashCode() ^ SKETCH_SEEDS[row]) * 0x9e3779b9;
+        return (hash ^ (hash >>> 16)) & this.sketchMask;
+    }
+
+    /**
+     * Counts one more use of the query with the given key, halving every counter
+     * once enough uses have been counted.
+     */
+    private void recordAccess(String key) {
+        for (int row = 0; row < this.sketch.length; row++) {
+            this.sketch[row][this.getSketchIndex(key, row)]++;
+        }
+        this.sketchAdditions++;
+        if (this.sketchAdditions == 10 * this.capacity) {
+            for (int[] counters : this.sketch) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>>= 1;
+                }
+            }
+            this.sketchAdditions = 0;
+        }
+    }
+
+    /**
+     * Returns (an upper bound on) the number of recent uses of the query with the
+     * given key.
+     */
+    private int estimateCount(String key) {
+        int count = Integer.MAX_VALUE;
+        for (int row = 0; row < this.sketch.length; row++) {
+            count = Math.min(count, this.sketch[row][this.getSketchIndex(key, row)]);
+        }
+        return count;
+    }
+
+    private void linkNewest(Entry entry) {
+        entry.newer = null;
+        entry.older = this.newest;
+        if (this.newest != null) {
+            this.newest.newer = entry;
+        } else {
+            this.oldest = entry;
+        }
+        this.newest = entry;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.newer != null) {
+            entry.newer.older = entry.older;
+        } else {
+            this.newest = entry.older;
+        }
+        if (entry.older != null) {
+            entry.older.newer = entry.newer;
+        } else {
+            this.oldest = entry.newer;
+        }
+        entry.newer = null;
+        entry.older = null;
+    }
+
+    /**
+     * Returns the number of result lists in the cache.
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Returns the number of calls to get() that found the results in the cache.
+     */
+    public synchronized long getHitCount() {
+        return this.hitCount;
+    }
+
+    /**
+     * Returns the number of calls to get() that did not find the results.
+     */
+    public synchronized long getMissCount() {
+        return this.missCount;
+    }
+
+    /**
+     * Returns the number of result lists put() did not keep because their query was
+     * not popular enough.
+     */
+    public synchronized long getRejectionCount() {
+        return this.rejectionCount;
+    }
+
+    /**
+     * Returns the fraction of calls to get() that found the results in the cache, or
+     * zero if get() was never called.
+     */
+    public synchronized double getHitRate() {
+        long lookups = this.hitCount + this.missCount;
+        return lookups == 0 ? 0.0 : (double) this.hitCount / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d/%d queries cached, %d hits, %d misses (hit rate %.1f%%), %d rejected",
+                this.entries.size(), this.capacity, this.hitCount, this.missCount, 100 * this.getHitRate(),
+                this.rejectionCount);
+    }
+}
@@ -0,0 +1,159 @@
+package search;
+
+import datastructures.concrete.dictionaries.ChainedHashDictionary;
+import datastructures.interfaces.IDictionary;
+import datastructures.interfaces.IList;
+import search.models.SearchResults;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Answers queries with a SearchEngine, making sure identical queries asked at the
+ * same time are only answered once.
+ *
+ * The first thread asking for the top k results of a query searches the index;
+ * every thread asking for the same results (the same words, k and time budget, on
+ * the same version of the index) before it is done waits for its results instead
+ * of searching too. So when a query suddenly gets popular, the index is searched
+ * once per burst of requests rather than once per request, even before the
+ * results make it into a QueryCache.
+ *
+ * A thread with a time budget never waits longer than its budget: if the search
+ * it is waiting for is not done by then, it searches the index on its own with
+ * whatever is left of its budget (usually nothing, so it gets partial results
+ * right away).
+ *
+ * If the search fails, every waiting thread gets the same exception. Threads
+ * asking again afterwards start a new search.
+ *
+ * All methods are safe to call from many threads at once. Callers must not modify
+ * the lists this returns, since they are shared.
+ */
+public class QueryCoalescer {
+    private final SearchEngine engine;
+    // The results of the queries being answered right now, by key.
+    private final IDictionary<String, CompletableFuture<SearchResults>> inFlight;
+    private long searchCount;
+    private long coalescedCount;
+    private long timeoutCount;
+
+    public QueryCoalescer(SearchEngine engine) {
+        this.engine = engine;
+        this.inFlight = new ChainedHashDictionary<>();
+        this.searchCount = 0;
+        this.coalescedCount = 0;
+        this.timeoutCount = 0;
+    }
+
+    /**
+     * Returns the k pages with the highest score for the given query, best first (see
+     * SearchEngine.search()), searching the index only if no other thread is already
+     * looking for the same results. In that case, the retrieval mode and parallelism
+     * in the given options are ignored in favor of those of the other thread.
+     */
+    public SearchResults search(IList<String> query, int k, SearchOptions options) {
+        long start = System.nanoTime();
+        String key = this.engine.getIndex().getVersion() + ":" + options.getTimeBudget() + ":"
+                + QueryCache.makeKey(query, k);
+        CompletableFuture<SearchResults> future;
+        boolean isFirst;
+        synchronized (this) {
+            future = this.inFlight.getOrDefault(key, null);
+            isFirst = future == null;
+            if (isFirst) {
+                future = new CompletableFuture<>();
+                this.inFlight.put(key, future);
+                this.searchCount++;
+            } else {
+                this.coalescedCount++;
+            }
+        }
+
+        if (!isFirst) {
+            SearchResults results = this.await(future, start, options);
+            if (results != null) {
+                return results;
+            }
+            // The other search took longer than this thread may wait.
+            synchronized (this) {
+                this.timeoutCount++;
+            }
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            return this.engine.search(query, k,
+                    options.withTimeBudget(Math.max(0, options.getTimeBudget() - elapsed)));
+        }
+
+        try {
+            SearchResults results = this.engine.search(query, k, options);
+            future.complete(results);
+            return results;
+        } catch (RuntimeException | Error ex) {
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            synchronized (this) {
+                this.inFlight.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Waits for the results of another thread's search, for no longer than what is
+     * left of the given time budget (counting from 'start'). Returns null if they
+     * are not ready by then.
+     */
+    private SearchResults await(CompletableFuture<SearchResults> future, long start, SearchOptions options) {
+        try {
+            if (!options.hasTimeBudget()) {
+                return future.join();
+            }
+            long remaining = options.getTimeBudget() * 1_000_000 - (System.nanoTime() - start);
+            return future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            return null;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an identical search", ex);
+        } catch (CompletionException | ExecutionException ex) {
+            // Rethrow what the first thread got, rather than a wrapper around it.
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            } else if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    /**
+     * Returns the number of queries that searched the index.
+     */
+    public synchronized long getSearchCount() {
+        return this.searchCount;
+    }
+
+    /**
+     * Returns the number of queries that waited for another thread's results instead.
+     */
+    public synchronized long getCoalescedCount() {
+        return this.coalescedCount;
+    }
+
+    /**
+     * Returns the number of queries that waited for another thread's results but ran
+     * out of time, and searched the index on their own.
+     */
+    public synchronized long getTimeoutCount() {
+        return this.timeoutCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d searches, %d queries waited for an identical search (%d timed out, %d in flight)",
+                this.searchCount, this.coalescedCount, this.timeoutCount, this.inFlight.size());
+    }
+}
@@ -1,15 +1,36 @@
 package search;
 
-import datastructures.concrete.ChainedHashSet;
+import datastructures.concrete.ArrayHeap;
 import datastructures.concrete.DoubleLinkedList;
+import datastructures.interfaces.IDictionary;
 import datastructures.interfaces.IList;
-import datastructures.interfaces.ISet;
-import misc.Searcher;
+import datastructures.interfaces.IPriorityQueue;
+import search.analyzers.CorpusStatistics;
 import search.analyzers.PageRankAnalyzer;
 import search.analyzers.TfIdfAnalyzer;
+import search.analyzers.pagerank.EdgeFile;
+import search.analyzers.pagerank.PageOrdering;
+import search.analyzers.pagerank.PageRankResult;
+import search.analyzers.pagerank.PageRankSolver;
+import search.index.Deadline;
+import search.index.ExhaustiveRetriever;
+import search.index.IdRegistry;
+import search.index.InMemoryIndex;
+import search.index.LiveIndex;
+import search.index.LiveSegment;
+import search.index.MappedSegment;
+import search.index.MaxScoreRetriever;
+import search.index.PostingList;
+import search.index.RetrievalMode;
+import search.index.ScoredDocument;
+import search.index.SearchIndex;
+import search.index.TieredRetriever;
+import search.index.WeightedQuery;
 import search.misc.Bridge;
+import search.misc.ParallelLoop;
 import search.misc.exceptions.DataExtractionException;
 import search.models.Result;
+import search.models.SearchResults;
 import search.models.Webpage;
 import search.models.WebpageSummary;
 
@@ -18,40 +39,156 @@ import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
 
 public class SearchEngine {
     public static final double PAGE_RANK_DECAY = 0.85;
     public static final double PAGE_RANK_EPSILON = 0.0001;
     public static final int PAGE_RANK_ITERATION_LIMIT = 200;
+    public static final PageRankSolver PAGE_RANK_SOLVER = PageRankSolver.POWER_ITERATION;
+    // Renumbering pages only pays off once the ranks no longer fit in the cache.
+    public static final PageOrdering PAGE_RANK_ORDERING = PageOrdering.ORIGINAL;
+    // Whether to compute page ranks from an edge file rather than from a graph in
+    // memory, for link graphs that do not fit in the heap (see EdgeFile).
+    public static final boolean PAGE_RANK_OUT_OF_CORE = false;
 
-    private ISet<WebpageSummary> pages;
-    private TfIdfAnalyzer tfIdfAnalyzer;
-    private PageRankAnalyzer pageRankAnalyzer;
+    // Shards smaller than this are not worth handing to a thread of their own.
+    public static final int MIN_SHARD_SIZE = 4096;
 
+    private final LiveIndex index;
+    private final ExhaustiveRetriever exhaustiveRetriever;
+    private final ForkJoinPool pool;
+
+    /**
+     * Loads every page in the given data folder and indexes them in memory.
+     */
     public SearchEngine(String dataFolderName) {
+        this(indexDataFolder(dataFolderName));
+    }
+
+    /**
+     * Creates a search engine answering queries from the given index. Pages added
+     * or deleted later on never modify the given index itself.
+     */
+    public SearchEngine(SearchIndex index) {
+        this.index = new LiveIndex(index);
+        this.exhaustiveRetriever = new ExhaustiveRetriever();
+        this.pool = ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Creates a search engine answering queries from the index segment stored in
+     * the given file (see BuildIndex).
+     */
+    public static SearchEngine open(Path segmentPath) throws IOException {
+        return new SearchEngine(MappedSegment.open(segmentPath));
+    }
+
+    /**
+     * Returns the file BuildIndex writes the index segment of the given data folder to.
+     */
+    public static Path getSegmentPath(String dataFolderName) {
+        return Paths.get("data", dataFolderName + ".segment");
+    }
+
+    /**
+     * Returns the file the link graph of the given data folder is written to when
+     * page ranks are computed out of core.
+     */
+    public static Path getEdgeFilePath(String dataFolderName) {
+        return Paths.get("data", dataFolderName + ".edges");
+    }
+
+    /**
+     * Returns the file the page ranks of the given data folder are saved to, so
+     * that indexing it again can skip computing them if its links did not change.
+     */
+    public static Path getPageRankCachePath(String dataFolderName) {
+        return Paths.get("data", dataFolderName + ".pagerank");
+    }
+
+    /**
+     * Loads every page in the given data folder and returns an in-memory index of them.
+     */
+    public static SearchIndex indexDataFolder(String dataFolderName) {
         long start = System.currentTimeMillis();
-        ISet<Webpage> webpages = this.collectWebpages(Paths.get("data", dataFolderName));
+        IList<URI> pageUris = collectPageUris(Paths.get("data", dataFolderName));
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        // Pages are only loaded one at a time while being counted, so the whole
+        // corpus is never in memory at once.
+        CorpusStatistics corpus = CorpusStatistics.read(pageUris, pool);
         long end = System.currentTimeMillis() - start;
         System.out.println("Done loading pages (" + (end / 1000.0) + " sec)");
 
-        this.pages = this.extractWebpageSummaries(webpages);
-        System.out.println("Done extracting");
-
         start = System.currentTimeMillis();
-        this.tfIdfAnalyzer = new TfIdfAnalyzer(webpages);
-        this.pageRankAnalyzer = new PageRankAnalyzer(
-                webpages,
-                PAGE_RANK_DECAY,
-                PAGE_RANK_EPSILON,
-                PAGE_RANK_ITERATION_LIMIT);
+        TfIdfAnalyzer tfIdfAnalyzer = new TfIdfAnalyzer(corpus, pool);
+        PageRankAnalyzer pageRankAnalyzer;
+        if (PAGE_RANK_OUT_OF_CORE) {
+            pageRankAnalyzer = makeOutOfCorePageRankAnalyzer(corpus, getEdgeFilePath(dataFolderName));
+        } else {
+            pageRankAnalyzer = makePageRankAnalyzer(corpus, getPageRankCachePath(dataFolderName), pool);
+        }
         end = System.currentTimeMillis() - start;
-        System.out.println("Done indexing (" + (end / 1000.0) + " sec)");
+        PageRankResult pageRankResult = pageRankAnalyzer.getResult();
+        System.out.println("Done indexing (" + (end / 1000.0) + " sec, page rank converged in "
+                + pageRankResult.getIterationCount() + " iterations)");
+
+        WebpageSummary[] summaries = new WebpageSummary[corpus.getDocumentCount()];
+        for (int id = 0; id < summaries.length; id++) {
+            summaries[id] = corpus.getSummary(id);
+        }
+
+        return buildIndex(tfIdfAnalyzer, pageRankAnalyzer, summaries);
+    }
+
+    /**
+     * Returns the index this search engine answers queries from.
+     */
+    public LiveIndex getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Adds the given page to the index, replacing any page with the same uri.
+     *
+     * A replaced page keeps its page rank. A new page is given the smallest page
+     * rank any page can have, (1 - decay) / (number of pages), since we do not
+     * know who links to it.
+     */
+    public void addPage(Webpage page) {
+        synchronized (this.index) {
+            double pageRank = this.index.getPageRank(page.getUri());
+            if (pageRank <= 0.0) {
+                pageRank = (1.0 - PAGE_RANK_DECAY) / (this.index.getDocumentCount() + 1);
+            }
+            this.index.addPage(page, pageRank);
+        }
+    }
+
+    /**
+     * Removes the page with the given uri from the index.
+     *
+     * @return 'true' if the index contained such a page
+     */
+    public boolean deletePage(URI uri) {
+        return this.index.deletePage(uri);
     }
 
     public double computeScore(IList<String> query, URI uri) {
-        double tfIdf = this.tfIdfAnalyzer.computeRelevance(query, uri);
-        double pageRank = this.pageRankAnalyzer.computePageRank(uri);
+        LiveIndex.Snapshot snapshot = this.index.snapshot();
+        int segmentIndex = snapshot.findSegment(uri);
+        if (segmentIndex < 0) {
+            throw new IllegalArgumentException("Page '" + uri + "' is not in the index");
+        }
+        LiveSegment segment = snapshot.getSegment(segmentIndex);
+        int id = segment.findLiveDocument(uri);
+        IDictionary<String, Double> idfScores = snapshot.computeIdfScores(query);
+        double tfIdf = WeightedQuery.of(query, segment, idfScores).computeRelevance(segment, id);
+        return combineScores(uri, tfIdf, segment.getPageRank(id));
+    }
 
+    private static double combineScores(URI uri, double tfIdf, double pageRank) {
         if (pageRank <= 0.0) {
             throw new IllegalStateException(String.format(
                     "Page '%s' had a page rank of '%f'; all page ranks should be positive and non-zero.",
@@ -82,42 +219,260 @@ public class SearchEngine {
         return tfIdf * Math.sqrt(pageRank);
     }
 
+    /**
+     * Returns the k pages with the highest score for the given query, best first.
+     */
     public IList<Result> getTopKResults(IList<String> query, int k) {
-        IList<Result> results = new DoubleLinkedList<>();
+        return this.getTopKResults(query, k, SearchOptions.DEFAULT);
+    }
+
+    /**
+     * Returns the k pages with the highest score for the given query, best first,
+     * using the given strategy to find them.
+     */
+    public IList<Result> getTopKResults(IList<String> query, int k, RetrievalMode mode) {
+        return this.getTopKResults(query, k, SearchOptions.DEFAULT.withMode(mode));
+    }
+
+    /**
+     * Returns the k pages with the highest score for the given query, best first,
+     * searching the index as the given options say. If the options give a time
+     * budget, these may not be the best pages (see search()).
+     */
+    public IList<Result> getTopKResults(IList<String> query, int k, SearchOptions options) {
+        return this.search(query, k, options).getResults();
+    }
+
+    /**
+     * Returns the k pages with the highest score for the given query, best first,
+     * searching the index as the given options say.
+     *
+     * Every segment of the index is cut into (at most options.getParallelism())
+     * shards of consecutive document ids, which are searched at the same time on
+     * the threads of this engine's pool. Each shard finds its own top k, and we
+     * keep the best k of all of them. Whatever the parallelism, the results are the
+     * same, modulo ties.
+     *
+     * Either way, only pages containing at least one of the query words are scored:
+     * every other page has a TF-IDF relevance of zero and so could never outrank them.
+     *
+     * If the options give a time budget and the search runs out of time, every shard
+     * stops scoring and we return the best pages found so far, marked as partial.
+     * In TIERED mode, the pages with the highest page rank are looked at first, so
+     * those are the ones a late search still finds.
+     */
+    public SearchResults search(IList<String> query, int k, SearchOptions options) {
+        if (k < 0) {
+            throw new IllegalArgumentException();
+        }
+        Deadline deadline = options.hasTimeBudget() ? Deadline.after(options.getTimeBudget()) : Deadline.NONE;
+        LiveIndex.Snapshot snapshot = this.index.snapshot();
+        IDictionary<String, Double> idfScores = snapshot.computeIdfScores(query);
+
+        // Every segment has its own document ids (and so its own weighted query).
+        int shardCount = 0;
+        for (int i = 0; i < snapshot.getSegmentCount(); i++) {
+            shardCount += countShards(snapshot.getSegment(i), options.getParallelism());
+        }
+        LiveSegment[] shardSegments = new LiveSegment[shardCount];
+        WeightedQuery[] shardQueries = new WeightedQuery[shardCount];
+        int[] shardStarts = new int[shardCount];
+        int[] shardEnds = new int[shardCount];
+        int shard = 0;
+        for (int i = 0; i < snapshot.getSegmentCount(); i++) {
+            LiveSegment segment = snapshot.getSegment(i);
+            WeightedQuery weightedQuery = WeightedQuery.of(query, segment, idfScores);
+            int segmentShards = countShards(segment, options.getParallelism());
+            for (int j = 0; j < segmentShards; j++) {
+                shardSegments[shard] = segment;
+                shardQueries[shard] = weightedQuery;
+                shardStarts[shard] = (int) ((long) segment.getDocumentCount() * j / segmentShards);
+                shardEnds[shard] = (int) ((long) segment.getDocumentCount() * (j + 1) / segmentShards);
+                shard++;
+            }
+        }
+
+        IList<ScoredDocument>[] hits = makeArrayOfHits(shardCount);
+        if (options.getParallelism() == 1 || shardCount == 1) {
+            for (int i = 0; i < shardCount; i++) {
+                hits[i] = this.findTopK(shardQueries[i], shardSegments[i], k, shardStarts[i], shardEnds[i],
+                                        options.getMode(), deadline);
+            }
+        } else {
+            ParallelLoop.forEachChunk(this.pool, shardCount, 1, (chunk, start, end) -> {
+                hits[chunk] = this.findTopK(shardQueries[chunk], shardSegments[chunk], k,
+                                            shardStarts[chunk], shardEnds[chunk], options.getMode(), deadline);
+            });
+        }
+        return new SearchResults(mergeTopK(hits, shardSegments, k), deadline.wasReached());
+    }
+
+    /**
+     * Returns the number of shards to cut the given segment into. Every shard has
+     * at least MIN_SHARD_SIZE documents, since smaller ones are not worth a thread.
+     */
+    private static int countShards(LiveSegment segment, int parallelism) {
+        return Math.max(1, Math.min(parallelism, segment.getDocumentCount() / MIN_SHARD_SIZE));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static IList<ScoredDocument>[] makeArrayOfHits(int size) {
+        return (IList<ScoredDocument>[]) new IList<?>[size];
+    }
 
-        for (WebpageSummary summary: this.pages) {
-            double score = this.computeScore(query, summary.getUri());
-            results.add(new Result(summary, score));
+    /**
+     * Returns the (at most) k best scoring documents of the given segment with ids
+     * from 'start' up to (but not including) 'end', sorted from best to worst.
+     */
+    private IList<ScoredDocument> findTopK(WeightedQuery query, LiveSegment segment, int k, int start, int end,
+                                           RetrievalMode mode, Deadline deadline) {
+        if (mode == RetrievalMode.MAX_SCORE) {
+            return MaxScoreRetriever.findTopK(query, segment, k, Double.NEGATIVE_INFINITY, start, end, deadline);
+        } else if (mode == RetrievalMode.TIERED) {
+            return TieredRetriever.findTopK(query, segment, k, start, end, deadline);
+        } else {
+            return this.exhaustiveRetriever.findTopK(query, segment, k, start, end, deadline);
         }
+    }
 
-        IList<Result> topK = Searcher.topKSort(k, results);
+    /**
+     * Returns the best k of the hits of every shard, each sorted from best to worst,
+     * as Results. This is a k-way merge: a heap holds the best hit of every shard
+     * not taken yet, so only the hits that make it are looked at. Ties go to the
+     * earliest shard.
+     */
+    private static IList<Result> mergeTopK(IList<ScoredDocument>[] hits, LiveSegment[] shardSegments, int k) {
+        IPriorityQueue<ShardHit> heap = new ArrayHeap<>();
+        for (int shard = 0; shard < hits.length; shard++) {
+            Iterator<ScoredDocument> iterator = hits[shard].iterator();
+            if (iterator.hasNext()) {
+                heap.insert(new ShardHit(shard, iterator.next(), iterator));
+            }
+        }
+        IList<Result> output = new DoubleLinkedList<>();
+        while (output.size() < k && !heap.isEmpty()) {
+            ShardHit best = heap.removeMin();
+            WebpageSummary summary = shardSegments[best.shard].getSummary(best.hit.getDocument());
+            output.add(new Result(summary, best.hit.getScore()));
+            if (best.rest.hasNext()) {
+                heap.insert(new ShardHit(best.shard, best.rest.next(), best.rest));
+            }
+        }
+        return output;
+    }
 
-        IList<Result> reversed = new DoubleLinkedList<>();
-        for (Result res : topK) {
-            reversed.insert(0, res);
+    /**
+     * The best hit of a shard that mergeTopK() has not taken yet. Better hits
+     * compare as smaller, so ArrayHeap (a min-heap) hands them out first.
+     */
+    private static class ShardHit implements Comparable<ShardHit> {
+        private final int shard;
+        private final ScoredDocument hit;
+        private final Iterator<ScoredDocument> rest;
+
+        public ShardHit(int shard, ScoredDocument hit, Iterator<ScoredDocument> rest) {
+            this.shard = shard;
+            this.hit = hit;
+            this.rest = rest;
         }
 
-        return reversed;
+        @Override
+        public int compareTo(ShardHit other) {
+            int result = Double.compare(other.hit.getScore(), this.hit.getScore());
+            return result != 0 ? result : Integer.compare(this.shard, other.shard);
+        }
     }
 
-    private ISet<Webpage> collectWebpages(Path root) {
+    /**
+     * Combines the output of the analyzers into an index.
+     *
+     * The score of a document is the sum over the query words of (query weight) *
+     * (frequency of the word in the document) * (document factor), where the
+     * document factor is sqrt(page rank) / (length * norm of the document's TF-IDF
+     * vector). We precompute the factor of every document here.
+     */
+    private static SearchIndex buildIndex(TfIdfAnalyzer tfIdfAnalyzer, PageRankAnalyzer pageRankAnalyzer,
+                                          WebpageSummary[] summaries) {
+        IdRegistry<String> terms = tfIdfAnalyzer.getTerms();
+        double[] idfScores = new double[terms.size()];
+        PostingList[] postings = new PostingList[terms.size()];
+        for (int termId = 0; termId < terms.size(); termId++) {
+            idfScores[termId] = tfIdfAnalyzer.getIdfScore(termId);
+            postings[termId] = tfIdfAnalyzer.getPostings(termId);
+        }
+
+        IdRegistry<URI> documents = tfIdfAnalyzer.getDocuments();
+        int[] lengths = new int[documents.size()];
+        double[] norms = new double[documents.size()];
+        double[] pageRanks = new double[documents.size()];
+        double[] documentFactors = new double[documents.size()];
+        for (int id = 0; id < documents.size(); id++) {
+            URI uri = documents.getItem(id);
+            lengths[id] = tfIdfAnalyzer.getDocumentLength(id);
+            norms[id] = tfIdfAnalyzer.getDocumentNorm(id);
+            pageRanks[id] = pageRankAnalyzer.computePageRank(uri);
+            // A document with an empty vector always has a relevance of zero.
+            documentFactors[id] = norms[id] == 0
+                    ? 0.0
+                    : combineScores(uri, 1.0 / (lengths[id] * norms[id]), pageRanks[id]);
+        }
+        return new InMemoryIndex(terms, idfScores, postings, documents, lengths, norms,
+                                 pageRanks, documentFactors, summaries);
+    }
+
+    /**
+     * Computes the page ranks of the given corpus, reusing those saved at the given
+     * path by an earlier run if the link graph has not changed (or updating them if
+     * it changed), and saves them there for the next run.
+     */
+    private static PageRankAnalyzer makePageRankAnalyzer(CorpusStatistics corpus, Path cachePath,
+                                                         ForkJoinPool pool) {
+        try {
+            return PageRankAnalyzer.loadOrCompute(
+                    cachePath,
+                    corpus.makeLinkGraph(),
+                    PAGE_RANK_SOLVER,
+                    PAGE_RANK_ORDERING,
+                    PAGE_RANK_DECAY,
+                    PAGE_RANK_EPSILON,
+                    PAGE_RANK_ITERATION_LIMIT,
+                    pool);
+        } catch (IOException ex) {
+            throw new DataExtractionException("Could not save the page ranks to " + cachePath, ex);
+        }
+    }
+
+    /**
+     * Writes the link graph of the given corpus to an edge file at the given path,
+     * and computes page ranks by streaming through it.
+     */
+    private static PageRankAnalyzer makeOutOfCorePageRankAnalyzer(CorpusStatistics corpus, Path edgeFilePath) {
+        try {
+            corpus.writeEdgeFile(edgeFilePath);
+            return new PageRankAnalyzer(
+                    corpus.getDocuments(),
+                    EdgeFile.open(edgeFilePath),
+                    PAGE_RANK_DECAY,
+                    PAGE_RANK_EPSILON,
+                    PAGE_RANK_ITERATION_LIMIT);
+        } catch (IOException ex) {
+            throw new DataExtractionException("Could not write the link graph to " + edgeFilePath, ex);
+        }
+    }
+
+    /**
+     * Returns the local uri of every page stored in the given folder, without
+     * loading any of them.
+     */
+    private static IList<URI> collectPageUris(Path root) {
         try {
             return Files.walk(root)
                     .filter(Files::isRegularFile)
                     .filter(path -> path.toString().endsWith(".htm") || path.toString().endsWith(".html"))
                     .map(Path::toUri)
-                    .map(Webpage::load)
-                    .collect(Bridge.toISet());
+                    .collect(Bridge.toIList());
         } catch (IOException ex) {
             throw new DataExtractionException("Could not find given root folder", ex);
         }
     }
-
-    private ISet<WebpageSummary> extractWebpageSummaries(ISet<Webpage> webpages) {
-        ISet<WebpageSummary> output = new ChainedHashSet<>();
-        for (Webpage page : webpages) {
-            output.add(page.getSummary());
-        }
-        return output;
-    }
 }
@@ -0,0 +1,81 @@
+package search;
+
+import search.index.RetrievalMode;
+
+/**
+ * How a SearchEngine should answer one query. Options are immutable: the with...()
+ * methods return a copy with one option changed, starting from DEFAULT.
+ */
+public class SearchOptions {
+    public static final long NO_TIME_BUDGET = -1;
+    public static final SearchOptions DEFAULT = new SearchOptions(RetrievalMode.TIERED, 1, NO_TIME_BUDGET);
+
+    private final RetrievalMode mode;
+    private final int parallelism;
+    private final long timeBudget;
+
+    private SearchOptions(RetrievalMode mode, int parallelism, long timeBudget) {
+        this.mode = mode;
+        this.parallelism = parallelism;
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * Returns the strategy used to find the top k pages of every shard.
+     */
+    public RetrievalMode getMode() {
+        return this.mode;
+    }
+
+    /**
+     * Returns the largest number of shards a segment of the index is cut into, each
+     * searched by a thread of its own. 1 searches everything on the calling thread.
+     */
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    /**
+     * Returns how long (in milliseconds) a search may take before it stops and
+     * returns the best results found so far, or NO_TIME_BUDGET if it may take as
+     * long as it needs.
+     */
+    public long getTimeBudget() {
+        return this.timeBudget;
+    }
+
+    public boolean hasTimeBudget() {
+        return this.timeBudget != NO_TIME_BUDGET;
+    }
+
+    public SearchOptions withMode(RetrievalMode mode) {
+        if (mode == null) {
+            throw new IllegalArgumentException();
+        }
+        return new SearchOptions(mode, this.parallelism, this.timeBudget);
+    }
+
+    /**
+     * @throws IllegalArgumentException  if the parallelism is less than 1
+     */
+    public SearchOptions withParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be at least 1");
+        }
+        return new SearchOptions(this.mode, parallelism, this.timeBudget);
+    }
+
+    /**
+     * Returns a copy of these options giving every search the given number of
+     * milliseconds (or as long as it needs, given NO_TIME_BUDGET). The time starts
+     * counting when the search starts.
+     *
+     * @throws IllegalArgumentException  if the time budget is negative (and not NO_TIME_BUDGET)
+     */
+    public SearchOptions withTimeBudget(long milliseconds) {
+        if (milliseconds < 0 && milliseconds != NO_TIME_BUDGET) {
+            throw new IllegalArgumentException("The time budget cannot be negative");
+        }
+        return new SearchOptions(this.mode, this.parallelism, milliseconds);
+    }
+}
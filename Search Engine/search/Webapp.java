@@ -3,6 +3,7 @@ package search;
 import datastructures.interfaces.IList;
 import search.misc.WordTokenizer;
 import search.models.Result;
+import search.models.SearchResults;
 import spark.ModelAndView;
 import spark.Request;
 import spark.Response;
@@ -13,6 +14,7 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Contains all code to manage and serve our website.
@@ -29,10 +31,26 @@ public class Webapp {
      */
     private static final String TEMPLATE_FILES = "webapp/templates";
 
+    /**
+     * How long (in milliseconds) a search may take. Searches running out of time
+     * return the best results found so far.
+     */
+    private static final long SEARCH_TIME_BUDGET = 250;
+
+    /**
+     * The most results a single search may ask for. Larger requests get this many.
+     */
+    private static final int MAX_RESULTS = 100;
+
     private final String siteName;
     private final SearchEngine engine;
     private final Service http;
     private final int port;
+    // The number of searches being answered right now, to decide how many threads
+    // each of them may use.
+    private final AtomicInteger activeSearches;
+    private final QueryCache cache;
+    private final QueryCoalescer coalescer;
 
     /**
      * Creates a new instance of this class.
@@ -45,6 +63,9 @@ public class Webapp {
         this.engine = engine;
         this.siteName = siteName;
         this.port = port;
+        this.activeSearches = new AtomicInteger(0);
+        this.cache = new QueryCache();
+        this.coalescer = new QueryCoalescer(engine);
 
         this.http = Service.ignite()
                 .staticFileLocation(STATIC_FILES)
@@ -52,6 +73,7 @@ public class Webapp {
         this.http.initExceptionHandler(this::handleFatalError);
         this.http.get("/", this::handleMain);
         this.http.get("/search", this::handleSearch);
+        this.http.get("/stats", this::handleStats);
         this.http.exception(Exception.class, this::handleError);
     }
 
@@ -78,21 +100,64 @@ public class Webapp {
     private String handleSearch(Request req, Response res) {
         // Get search query
         String query = req.queryParams("query");
-        int numResults = Integer.parseInt(req.queryParamOrDefault("num_results", "20"));
+        int numResults;
+        try {
+            numResults = Integer.parseInt(req.queryParamOrDefault("num_results", "20"));
+        } catch (NumberFormatException ex) {
+            numResults = 0;
+        }
+        if (numResults <= 0) {
+            res.status(400);
+            res.type("text/plain");
+            return "The number of results must be a positive integer\n";
+        }
+        numResults = Math.min(numResults, MAX_RESULTS);
 
         // Perform core search
         IList<String> queryTerms = WordTokenizer.extract(query);
-        IList<Result> results = this.engine.getTopKResults(queryTerms, numResults);
+        // Read before searching, so that the results are at least this recent.
+        long version = this.engine.getIndex().getVersion();
+        IList<Result> results = this.cache.get(queryTerms, numResults, version);
+        boolean isPartial = false;
+        if (results == null) {
+            SearchResults searchResults;
+            int active = this.activeSearches.incrementAndGet();
+            try {
+                // When few people are searching, every search may use several cores;
+                // under load, the cores are better spent on other requests.
+                int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() / active);
+                searchResults = this.coalescer.search(queryTerms, numResults,
+                        SearchOptions.DEFAULT.withParallelism(parallelism).withTimeBudget(SEARCH_TIME_BUDGET));
+            } finally {
+                this.activeSearches.decrementAndGet();
+            }
+            results = searchResults.getResults();
+            isPartial = searchResults.isPartial();
+            // Partial results would hide the complete ones until the index changes.
+            if (!isPartial) {
+                this.cache.put(queryTerms, numResults, version, results);
+            }
+        }
 
         // Render results
         Map<String, Object> model = new HashMap<>();
         model.put("siteTitle", this.siteName);
         model.put("results", results);
+        model.put("isPartial", isPartial);
         model.put("initialQuery", query);
 
         return this.render("search.mustache", model);
     }
 
+    /**
+     * Reports how well the query cache and coalescer are doing, as plain text.
+     */
+    private String handleStats(Request req, Response res) {
+        res.type("text/plain");
+        return "Query cache: " + this.cache + "\n"
+                + "Query coalescer: " + this.coalescer + "\n";
+    }
+
     /**
      * Handles fatal errors that causes the webapp to crash before
      * it even has a chance to run.
@@ -0,0 +1,334 @@
+package search.analyzers;
+
+import datastructures.concrete.KVPair;
+import datastructures.concrete.dictionaries.ChainedHashDictionary;
+import datastructures.interfaces.IDictionary;
+import datastructures.interfaces.IList;
+import datastructures.interfaces.ISet;
+import search.analyzers.pagerank.EdgeFile;
+import search.analyzers.pagerank.LinkGraph;
+import search.index.IdRegistry;
+import search.index.UriRegistry;
+import search.misc.ParallelLoop;
+import search.models.Webpage;
+import search.models.WebpageSummary;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+
+/**
+ * Holds everything the analyzers need to know about a set of webpages: how many
+ * times every word appears in every page, the links leaving every page, and the
+ * summary of every page.
+ *
+ * A Webpage keeps its full list of words and links, which take up far more memory
+ * than what we keep here (see WebpageSummary). read() loads the pages one at a
+ * time and drops each of them as soon as it has been counted, so only a handful
+ * of them are ever in memory at once.
+ *
+ * Pages are counted in parallel, in chunks of consecutive pages. Every chunk gives
+ * ids to its words and counts their document frequencies in tables of its own,
+ * which are merged into the global ones in chunk order. So words are given the same
+ * ids (in the order in which they first appear) no matter how many threads are used.
+ */
+public class CorpusStatistics {
+    // The number of pages handed to a thread at a time.
+    private static final int CHUNK_SIZE = 64;
+
+    // The number of chunks counted before they are merged: this bounds the memory
+    // taken up by chunks that have been counted but not merged yet.
+    private static final int CHUNKS_PER_ROUND = 64;
+
+    private final IdRegistry<URI> documents;
+    private final IdRegistry<String> terms;
+
+    // The arrays below are indexed by document id, except for documentFrequencies,
+    // which is indexed by term id. The term ids of a document are in no particular
+    // order; termCounts[id][i] is the number of times word termIds[id][i] appears.
+    // Pages and the pages they link to are known by their id in 'uris' in uriIds
+    // and links. The registry only holds the uris of these pages and their links.
+    private final UriRegistry uris;
+    private final int[] uriIds;
+    private final int[][] termIds;
+    private final int[][] termCounts;
+    private final int[] lengths;
+    private final int[][] links;
+    private final WebpageSummary[] summaries;
+    private int[] documentFrequencies;
+
+    private CorpusStatistics(int size) {
+        this.documents = new IdRegistry<>();
+        this.terms = new IdRegistry<>();
+        this.uris = new UriRegistry();
+        this.uriIds = new int[size];
+        this.termIds = new int[size][];
+        this.termCounts = new int[size][];
+        this.lengths = new int[size];
+        this.links = new int[size][];
+        this.summaries = new WebpageSummary[size];
+        this.documentFrequencies = new int[16];
+    }
+
+    /**
+     * Loads and counts the pages stored at the given local uris. Page 'i' of the
+     * list is given document id 'i'.
+     *
+     * @throws IllegalArgumentException  if two of the pages have the same uri
+     */
+    public static CorpusStatistics read(IList<URI> pageUris, ForkJoinPool pool) {
+        URI[] uris = new URI[pageUris.size()];
+        int i = 0;
+        for (URI uri : pageUris) {
+            uris[i] = uri;
+            i++;
+        }
+        return count(uris.length, id -> Webpage.load(uris[id]), pool);
+    }
+
+    /**
+     * Counts the given pages, which were already loaded. Pages are given ids in the
+     * order in which the set returns them.
+     */
+    public static CorpusStatistics of(ISet<Webpage> webpages, ForkJoinPool pool) {
+        Webpage[] pages = new Webpage[webpages.size()];
+        int i = 0;
+        for (Webpage page : webpages) {
+            pages[i] = page;
+            i++;
+        }
+        return count(pages.length, id -> pages[id], pool);
+    }
+
+    /**
+     * Counts the pages returned by 'pages' for the ids 0 to size - 1.
+     */
+    private static CorpusStatistics count(int size, IntFunction<Webpage> pages, ForkJoinPool pool) {
+        CorpusStatistics output = new CorpusStatistics(size);
+        int roundSize = CHUNK_SIZE * CHUNKS_PER_ROUND;
+        for (int first = 0; first < size; first += roundSize) {
+            int offset = first;
+            int end = Math.min(first + roundSize, size);
+            Chunk[] chunks = new Chunk[ParallelLoop.countChunks(end - first, CHUNK_SIZE)];
+            ParallelLoop.forEachChunk(pool, end - first, CHUNK_SIZE, (chunk, start, stop) -> {
+                chunks[chunk] = new Chunk(pages, offset + start, offset + stop, output.uris);
+            });
+            for (Chunk chunk : chunks) {
+                output.merge(chunk);
+            }
+        }
+        return output;
+    }
+
+    /**
+     * The counts of a chunk of consecutive pages, using term ids of its own.
+     */
+    private static class Chunk {
+        private final int first;
+        private final IdRegistry<String> terms;
+        private int[] documentFrequencies;
+        private final int[][] termIds;
+        private final int[][] termCounts;
+        private final int[] lengths;
+        private final int[] uriIds;
+        private final int[][] links;
+        private final WebpageSummary[] summaries;
+
+        public Chunk(IntFunction<Webpage> pages, int first, int end, UriRegistry uris) {
+            this.first = first;
+            this.terms = new IdRegistry<>();
+            this.documentFrequencies = new int[16];
+            this.termIds = new int[end - first][];
+            this.termCounts = new int[end - first][];
+            this.lengths = new int[end - first];
+            this.uriIds = new int[end - first];
+            this.links = new int[end - first][];
+            this.summaries = new WebpageSummary[end - first];
+            for (int i = 0; i < end - first; i++) {
+                // Only keep what we need: the page itself is garbage as soon as we move on.
+                this.add(i, pages.apply(first + i), uris);
+            }
+        }
+
+        private void add(int i, Webpage page, UriRegistry uris) {
+            IDictionary<String, Integer> counts = new ChainedHashDictionary<>();
+            for (String word : page.getWords()) {
+                counts.put(word, counts.getOrDefault(word, 0) + 1);
+            }
+            this.termIds[i] = new int[counts.size()];
+            this.termCounts[i] = new int[counts.size()];
+            int j = 0;
+            for (KVPair<String, Integer> pair : counts) {
+                int termId = this.terms.register(pair.getKey());
+                if (termId == this.documentFrequencies.length) {
+                    this.documentFrequencies = Arrays.copyOf(this.documentFrequencies, termId * 2);
+                }
+                this.documentFrequencies[termId]++;
+                this.termIds[i][j] = termId;
+                this.termCounts[i][j] = pair.getValue();
+                j++;
+            }
+
+            // Links from a page to itself are dropped later on, with those to pages
+            // outside of the corpus.
+            this.uriIds[i] = uris.intern(page.getUri());
+            this.links[i] = uris.internAll(page.getLinks());
+
+            this.lengths[i] = page.getWords().size();
+            this.summaries[i] = page.getSummary();
+        }
+    }
+
+    /**
+     * Adds the counts of the given chunk, which must be the next one.
+     */
+    private void merge(Chunk chunk) {
+        int[] globalIds = new int[chunk.terms.size()];
+        for (int termId = 0; termId < globalIds.length; termId++) {
+            int globalId = this.terms.register(chunk.terms.getItem(termId));
+            if (globalId == this.documentFrequencies.length) {
+                this.documentFrequencies = Arrays.copyOf(this.documentFrequencies, globalId * 2);
+            }
+            this.documentFrequencies[globalId] += chunk.documentFrequencies[termId];
+            globalIds[termId] = globalId;
+        }
+
+        for (int i = 0; i < chunk.lengths.length; i++) {
+            URI uri = chunk.summaries[i].getUri();
+            int id = this.documents.register(uri);
+            if (id != chunk.first + i) {
+                throw new IllegalArgumentException("Page '" + uri + "' appears twice");
+            }
+            int[] ids = chunk.termIds[i];
+            for (int j = 0; j < ids.length; j++) {
+                ids[j] = globalIds[ids[j]];
+            }
+            this.termIds[id] = ids;
+            this.termCounts[id] = chunk.termCounts[i];
+            this.lengths[id] = chunk.lengths[i];
+            this.summaries[id] = chunk.summaries[i];
+            this.uriIds[id] = chunk.uriIds[i];
+            this.links[id] = chunk.links[i];
+        }
+    }
+
+    /**
+     * Returns the registry assigning an id to every page.
+     */
+    public IdRegistry<URI> getDocuments() {
+        return this.documents;
+    }
+
+    /**
+     * Returns the registry assigning an id to every word found in any page.
+     */
+    public IdRegistry<String> getTerms() {
+        return this.terms;
+    }
+
+    /**
+     * Returns the number of pages.
+     */
+    public int getDocumentCount() {
+        return this.documents.size();
+    }
+
+    /**
+     * Returns the term ids of the distinct words of the given page, in no
+     * particular order. The returned array must not be modified.
+     */
+    public int[] getTermIds(int id) {
+        return this.termIds[id];
+    }
+
+    /**
+     * Returns the number of times every word of getTermIds(id) appears in the
+     * given page. The returned array must not be modified.
+     */
+    public int[] getTermCounts(int id) {
+        return this.termCounts[id];
+    }
+
+    /**
+     * Returns the number of words in the given page.
+     */
+    public int getDocumentLength(int id) {
+        return this.lengths[id];
+    }
+
+    /**
+     * Returns the number of pages containing the word with the given term id.
+     */
+    public int getDocumentFrequency(int termId) {
+        return this.documentFrequencies[termId];
+    }
+
+    /**
+     * Returns the summary of the given page.
+     */
+    public WebpageSummary getSummary(int id) {
+        return this.summaries[id];
+    }
+
+    /**
+     * Returns the graph of links between the pages, leaving out links to pages
+     * outside of this corpus. Pages keep their document ids.
+     */
+    public LinkGraph makeLinkGraph() {
+        int[] targets = this.resolveLinkTargets();
+        int[][] outLinks = new int[this.documents.size()][];
+        for (int id = 0; id < outLinks.length; id++) {
+            outLinks[id] = this.resolveLinks(id, targets);
+        }
+        return new LinkGraph(this.documents, outLinks);
+    }
+
+    /**
+     * Writes the same graph as makeLinkGraph() to an EdgeFile at the given path,
+     * without building the graph in memory.
+     */
+    public void writeEdgeFile(Path path) throws IOException {
+        int[] targets = this.resolveLinkTargets();
+        EdgeFile.write(path, this.documents.size(), id -> this.resolveLinks(id, targets));
+    }
+
+    /**
+     * Returns the document id of every uri of 'uris', or -1 for uris outside of
+     * this corpus.
+     */
+    private int[] resolveLinkTargets() {
+        int[] targets = new int[this.uris.size()];
+        Arrays.fill(targets, -1);
+        for (int id = 0; id < this.uriIds.length; id++) {
+            if (this.uriIds[id] >= 0) {
+                targets[this.uriIds[id]] = id;
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Returns the document ids of the pages the given page links to, given the
+     * output of resolveLinkTargets().
+     */
+    private int[] resolveLinks(int id, int[] targets) {
+        int count = 0;
+        for (int target : this.links[id]) {
+            if (targets[target] >= 0 && targets[target] != id) {
+                count++;
+            }
+        }
+        int[] output = new int[count];
+        count = 0;
+        for (int target : this.links[id]) {
+            if (targets[target] >= 0 && targets[target] != id) {
+                output[count] = targets[target];
+                count++;
+            }
+        }
+        return output;
+    }
+}
@@ -1,14 +1,25 @@
 package search.analyzers;
 
-import datastructures.concrete.ChainedHashSet;
-import datastructures.concrete.KVPair;
-import datastructures.concrete.dictionaries.ChainedHashDictionary;
-import datastructures.interfaces.IDictionary;
-import datastructures.interfaces.IList;
 import datastructures.interfaces.ISet;
+import search.analyzers.pagerank.EdgeFile;
+import search.analyzers.pagerank.GraphReordering;
+import search.analyzers.pagerank.LinkGraph;
+import search.analyzers.pagerank.MappedPowerIteration;
+import search.analyzers.pagerank.PageOrdering;
+import search.analyzers.pagerank.PageRankCache;
+import search.analyzers.pagerank.PageRankResult;
+import search.analyzers.pagerank.PageRankSolver;
+import search.analyzers.pagerank.ResidualPush;
+import search.index.IdRegistry;
+import search.index.UriRegistry;
+import search.misc.ParallelLoop;
 import search.models.Webpage;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This class is responsible for computing the 'page rank' of all available webpages.
@@ -16,7 +27,12 @@ import java.net.URI;
  * See the spec for more details.
  */
 public class PageRankAnalyzer {
-    private IDictionary<URI, Double> pageRanks;
+    // The number of webpages handed to a thread at a time while building the graph.
+    private static final int CHUNK_SIZE = 64;
+
+    private IdRegistry<URI> pages;
+    private double[] pageRanks;
+    private PageRankResult result;
 
     /**
      * Computes a graph representing the internet and computes the page rank of all
@@ -31,133 +47,202 @@ public class PageRankAnalyzer {
      *                  page rank never converges.
      */
     public PageRankAnalyzer(ISet<Webpage> webpages, double decay, double epsilon, int limit) {
-        // Implementation note: We have commented these method calls out so your
-        // search engine doesn't immediately crash when you try running it for the
-        // first time.
-        //
-        // You should uncomment these lines when you're ready to begin working
-        // on this class.
+        this(webpages, decay, epsilon, limit, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Same as above, but builds the graph and computes the page ranks using the
+     * threads of the given pool. The page ranks do not depend on the number of threads.
+     */
+    public PageRankAnalyzer(ISet<Webpage> webpages, double decay, double epsilon, int limit,
+                            ForkJoinPool pool) {
+        this(makeGraph(webpages, pool), decay, epsilon, limit, pool);
+    }
+
+    /**
+     * Computes the page rank of every page of the given graph by power iteration,
+     * on a single thread.
+     */
+    public PageRankAnalyzer(LinkGraph graph, double decay, double epsilon, int limit) {
+        this(graph, PageRankSolver.POWER_ITERATION, decay, epsilon, limit, null);
+    }
+
+    /**
+     * Computes the page rank of every page of the given graph by power iteration,
+     * using the threads of the given pool.
+     */
+    public PageRankAnalyzer(LinkGraph graph, double decay, double epsilon, int limit, ForkJoinPool pool) {
+        this(graph, PageRankSolver.POWER_ITERATION, decay, epsilon, limit, pool);
+    }
 
-        // Step 1: Make a graph representing the 'internet'
-        IDictionary<URI, ISet<URI>> graph = this.makeGraph(webpages);
+    /**
+     * Computes the page rank of every page of the given graph with the given solver.
+     * Solvers that support it use the threads of the given pool; if the pool is
+     * null, everything runs on the calling thread.
+     */
+    public PageRankAnalyzer(LinkGraph graph, PageRankSolver solver, double decay, double epsilon, int limit,
+                            ForkJoinPool pool) {
+        this(graph, solver, PageOrdering.ORIGINAL, decay, epsilon, limit, pool);
+    }
 
-        // Step 2: Use this graph to compute the page rank for each webpage
-        this.pageRanks = this.makePageRanks(graph, decay, limit, epsilon);
+    /**
+     * Same as above, but first renumbers the pages of the graph in the given order
+     * (see GraphReordering), which can make large graphs faster to rank.
+     */
+    public PageRankAnalyzer(LinkGraph graph, PageRankSolver solver, PageOrdering ordering,
+                            double decay, double epsilon, int limit, ForkJoinPool pool) {
+        this.pages = graph.getPages();
+        if (ordering == PageOrdering.ORIGINAL) {
+            this.result = solver.solve(graph, decay, epsilon, limit, pool);
+        } else {
+            int[] order = GraphReordering.computeOrder(graph, ordering);
+            LinkGraph reordered = GraphReordering.reorder(graph, order);
+            this.result = GraphReordering.restoreOrder(
+                    solver.solve(reordered, decay, epsilon, limit, pool), order);
+        }
+        this.pageRanks = this.result.getRanks();
 
         // Note: we don't store the graph as a field: once we've computed the
         // page ranks, we no longer need it!
     }
 
     /**
-     * This method converts a set of webpages into an unweighted, directed graph,
-     * in adjacency list form.
+     * Computes the page rank of every page of the graph stored in the given edge
+     * file by power iteration, streaming through the file on every iteration rather
+     * than loading the graph (see MappedPowerIteration). 'pages' gives the uri of
+     * every page id of the file.
+     */
+    public PageRankAnalyzer(IdRegistry<URI> pages, EdgeFile graph, double decay, double epsilon, int limit) {
+        if (pages.size() != graph.getPageCount()) {
+            throw new IllegalArgumentException("Every page of the graph needs exactly one uri");
+        }
+        this.pages = pages;
+        this.result = MappedPowerIteration.solve(graph, decay, epsilon, limit);
+        this.pageRanks = this.result.getRanks();
+    }
+
+    private PageRankAnalyzer(IdRegistry<URI> pages, PageRankResult result) {
+        this.pages = pages;
+        this.result = result;
+        this.pageRanks = result.getRanks();
+    }
+
+    /**
+     * Returns an analyzer holding the page rank of every page of the given graph,
+     * reusing the page ranks saved in the given file where possible (see
+     * PageRankCache):
      *
-     * You may assume that each webpage can be uniquely identified by its URI.
+     * - If they were computed for the same graph, with the same decay and an epsilon
+     *   no larger than the given one, they are used as they are, without iterating.
+     * - Otherwise, if they were computed with the same decay, they are updated for
+     *   the given graph (see update()), which is fast as long as the graph changed
+     *   little.
+     * - Otherwise, the page ranks are computed from scratch as by the constructor.
      *
-     * Note that a webpage may contain links to other webpages that are *not*
-     * included within set of webpages you were given. You should omit these
-     * links from your graph: we want the final graph we build to be
-     * entirely "self-contained".
+     * Unless the saved ranks were used as they are, the new ones are then saved to
+     * the file.
+     *
+     * @throws IOException  if the new page ranks cannot be saved
      */
-    private IDictionary<URI, ISet<URI>> makeGraph(ISet<Webpage> webpages) {
-        IDictionary<URI, ISet<URI>> webpageGraph = new ChainedHashDictionary<URI, ISet<URI>>();
-        for (Webpage page : webpages) {
-            URI pageUri = page.getUri();
-            webpageGraph.put(pageUri, null);
-        }
-        for (Webpage page : webpages) {
-            ISet<URI> pageUniqueLinks = new ChainedHashSet<URI>();
-            URI pageUri = page.getUri();
-            IList<URI> pageLinks = page.getLinks();
-            for (URI link : pageLinks) {
-                if (!link.equals(pageUri) && webpageGraph.containsKey(link)) {
-                    pageUniqueLinks.add(link);
-                }
+    public static PageRankAnalyzer loadOrCompute(Path cachePath, LinkGraph graph, PageRankSolver solver,
+                                                 PageOrdering ordering, double decay, double epsilon, int limit,
+                                                 ForkJoinPool pool) throws IOException {
+        long fingerprint = PageRankCache.fingerprint(graph);
+        PageRankCache.SavedRanks saved = PageRankCache.read(cachePath);
+        if (saved != null && saved.getDecay() == decay) {
+            if (saved.getFingerprint() == fingerprint && saved.getEpsilon() <= epsilon) {
+                return new PageRankAnalyzer(graph.getPages(), new PageRankResult(saved.getRanks(), new double[0]));
             }
-            
-            webpageGraph.put(pageUri, pageUniqueLinks);
+        } else {
+            saved = null;
+        }
+
+        PageRankAnalyzer analyzer;
+        if (saved != null) {
+            PageRankAnalyzer old = new PageRankAnalyzer(
+                    saved.makePages(graph.getPages()), new PageRankResult(saved.getRanks(), new double[0]));
+            analyzer = old.update(graph, decay, epsilon, limit);
+        } else {
+            analyzer = new PageRankAnalyzer(graph, solver, ordering, decay, epsilon, limit, pool);
         }
-        return webpageGraph;
+        PageRankCache.write(cachePath, graph, fingerprint, decay, epsilon, analyzer.pageRanks);
+        return analyzer;
     }
 
     /**
-     * Computes the page ranks for all webpages in the graph.
+     * Returns an analyzer holding the page rank of every page of the given graph,
+     * which is a later version of the graph this analyzer was given, where some
+     * pages or links were added or removed.
      *
-     * Precondition: assumes 'this.graphs' has previously been initialized.
+     * Starts from the page ranks of this analyzer and only recomputes them around
+     * the pages and links that changed (see ResidualPush), which is much faster than
+     * starting over when few things changed. This analyzer is left as it was.
+     */
+    public PageRankAnalyzer update(LinkGraph graph, double decay, double epsilon, int limit) {
+        PageRankResult newResult = ResidualPush.update(graph, this.pages, this.pageRanks, decay, epsilon, limit);
+        return new PageRankAnalyzer(graph.getPages(), newResult);
+    }
+
+    /**
+     * This method converts a set of webpages into an unweighted, directed graph.
      *
-     * @param decay     Represents the "decay" factor when computing page rank (see spec).
-     * @param epsilon   When the difference in page ranks is less then or equal to this number,
-     *                  stop iterating.
-     * @param limit     The maximum number of iterations we spend computing page rank. This value
-     *                  is meant as a safety valve to prevent us from infinite looping in case our
-     *                  page rank never converges.
+     * You may assume that each webpage can be uniquely identified by its URI.
+     *
+     * Note that a webpage may contain links to other webpages that are *not*
+     * included within set of webpages you were given. You should omit these
+     * links from your graph: we want the final graph we build to be
+     * entirely "self-contained".
+     *
+     * Links are matched up with pages by their id in a UriRegistry of their own,
+     * so every uri is hashed once rather than once per link. Pages are given ids in the
+     * order in which the set returns them.
      */
-    private IDictionary<URI, Double> makePageRanks(IDictionary<URI, ISet<URI>> graph,
-                                                   double decay,
-                                                   int limit,
-                                                   double epsilon) {
-        IDictionary<URI, Double> initialPageRank = new ChainedHashDictionary<URI, Double>();
-        int numPages = graph.size();
-        
-        for (KVPair<URI, ISet<URI>> pair : graph) {
-            URI pageUri = pair.getKey();
-            double initialRank = (1.0 / numPages);
-            initialPageRank.put(pageUri, initialRank);
+    private static LinkGraph makeGraph(ISet<Webpage> webpages, ForkJoinPool pool) {
+        IdRegistry<URI> pages = new IdRegistry<>();
+        Webpage[] webpageArray = new Webpage[webpages.size()];
+        for (Webpage page : webpages) {
+            webpageArray[pages.register(page.getUri())] = page;
         }
 
-        for (int i = 0; i < limit; i++) {
-            IDictionary<URI, Double> newPageRank = new ChainedHashDictionary<URI, Double>();
-            
-            for (KVPair<URI, ISet<URI>> pair : graph) {
-                newPageRank.put(pair.getKey(), 0.0);
+        // Interning is safe from several threads, so the pages can be handled in
+        // parallel; the results are put back in the original order.
+        UriRegistry uris = new UriRegistry();
+        int[] uriIds = new int[webpageArray.length];
+        int[][] links = new int[webpageArray.length][];
+        ParallelLoop.forEachChunk(pool, webpageArray.length, CHUNK_SIZE, (chunk, start, end) -> {
+            for (int j = start; j < end; j++) {
+                uriIds[j] = uris.intern(webpageArray[j].getUri());
+                links[j] = uris.internAll(webpageArray[j].getLinks());
             }
-              
-            for (KVPair<URI, ISet<URI>> page: graph) {
-                URI currUri = page.getKey();
-                double oldPageRank = initialPageRank.get(currUri);
-                ISet<URI> outEdges = graph.get(currUri);
-                int numLinks = outEdges.size();
-                if (numLinks == 0) {
-                    double increaseBy = (decay * oldPageRank) / numPages;
-                    newPageRank = increaseAllPageRanks(newPageRank, increaseBy);
-                } else {
-                    double toIncrease = (decay * oldPageRank) / numLinks;
-                    for (URI outEdgeLink : outEdges) {
-                        double newRank = newPageRank.get(outEdgeLink) + toIncrease;
-                        newPageRank.put(outEdgeLink, newRank);
-                    }
-                }
+        });
+
+        int[] pageIds = new int[uris.size()];
+        Arrays.fill(pageIds, -1);
+        for (int j = 0; j < uriIds.length; j++) {
+            if (uriIds[j] >= 0) {
+                pageIds[uriIds[j]] = j;
             }
-            
-            Double addToRank = (1.0 - decay)/numPages;
-            newPageRank = increaseAllPageRanks(newPageRank, addToRank);
-            
-            boolean lessThanEpsilon = true;
-            for (KVPair<URI, Double> link : newPageRank) {
-                URI currUri = link.getKey();
-                Double oldPageRank = initialPageRank.get(currUri);
-                Double currPageRank = link.getValue();
-                Double difference = Math.abs(currPageRank - oldPageRank);
-                if (difference >= epsilon) {
-                    lessThanEpsilon = false;
-                }   
-            } 
-
-            if (lessThanEpsilon) {
-                return newPageRank;
+        }
+        int[][] outLinks = new int[webpageArray.length][];
+        for (int j = 0; j < links.length; j++) {
+            int count = 0;
+            for (int link : links[j]) {
+                if (pageIds[link] >= 0 && pageIds[link] != j) {
+                    links[j][count] = pageIds[link];
+                    count++;
+                }
             }
-            initialPageRank = newPageRank;
-            newPageRank = null;
+            outLinks[j] = Arrays.copyOf(links[j], count);
         }
-        return initialPageRank;
+        return new LinkGraph(pages, outLinks);
     }
 
-    private IDictionary<URI, Double> increaseAllPageRanks(IDictionary<URI, Double> newPageRank, Double increaseBy){
-        for (KVPair<URI, Double> link : newPageRank) {
-            Double currRank = newPageRank.get(link.getKey());
-            newPageRank.put(link.getKey(), (currRank + increaseBy));
-        }
-        return newPageRank;
+    /**
+     * Returns the output of the solver that computed the page ranks, including the
+     * number of iterations it took.
+     */
+    public PageRankResult getResult() {
+        return this.result;
     }
 
     /**
@@ -167,6 +252,6 @@ public class PageRankAnalyzer {
      *               webpages given to the constructor.
      */
     public double computePageRank(URI pageUri) {
-        return this.pageRanks.get(pageUri);
+        return this.pageRanks[this.pages.getId(pageUri)];
     }
 }
@@ -1,175 +1,235 @@
 package search.analyzers;
 
-import datastructures.concrete.ChainedHashSet;
-import datastructures.concrete.KVPair;
-import datastructures.concrete.dictionaries.ChainedHashDictionary;
-
-import datastructures.interfaces.IDictionary;
 import datastructures.interfaces.IList;
 import datastructures.interfaces.ISet;
+import search.index.IdRegistry;
+import search.index.PostingList;
+import search.index.SparseVector;
+import search.misc.ParallelLoop;
 import search.models.Webpage;
 
 import java.net.URI;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This class is responsible for computing how "relevant" any given document is
  * to a given search query.
  *
+ * Once constructed, the index held by this class is never modified and queries
+ * keep all of their state in local variables or per-thread scratch space, so a
+ * single instance may be queried from many threads at once.
  */
 public class TfIdfAnalyzer {
+    // The number of documents handed to a thread at a time while building the index.
+    private static final int CHUNK_SIZE = 64;
+
+    // Every word found in any document is given a dense id by 'terms', and every
+    // document by 'documents'. All the arrays below are indexed by those ids.
+    private IdRegistry<String> terms;
+    private IdRegistry<URI> documents;
+
     // This field must contain the IDF score for every single word in all
-    // the documents.
-    private IDictionary<String, Double> idfScores;
+    // the documents, indexed by term id.
+    private double[] idfScores;
 
     // This field must contain the TF-IDF vector for each webpage you were given
-    // in the constructor.
-    //
-    // We will use each webpage's page URI as a unique key.
-    private IDictionary<URI, IDictionary<String, Double>> documentTfIdfVectors;
-    private IDictionary<String, Double> queryVector;
+    // in the constructor, indexed by document id. Each vector maps term ids
+    // to TF-IDF scores.
+    private SparseVector[] documentTfIdfVectors;
+
+    // This field stores the norm of every document's TF-IDF vector, which
+    // never changes once the vectors are built.
+    private double[] documentNorms;
+
+    // This field stores the number of words in every document.
+    private int[] documentLengths;
+
+    // This field maps every term id to the ids of the pages containing that word
+    // and the number of times it appears in each (its "posting list"), so a query
+    // only has to look at pages that share at least one word with it.
+    private PostingList[] invertedIndex;
 
+    // The weights of the query being scored, reused by every query on the same thread.
+    private final ThreadLocal<QueryScratch> queryScratch;
 
     public TfIdfAnalyzer(ISet<Webpage> webpages) {
-        this.idfScores = this.computeIdfScores(webpages);
-        this.documentTfIdfVectors = this.computeAllDocumentTfIdfVectors(webpages);
-        this.queryVector = new ChainedHashDictionary<String, Double>();
+        this(webpages, ForkJoinPool.commonPool());
     }
 
-    public IDictionary<URI, IDictionary<String, Double>> getDocumentTfIdfVectors() {
-        return this.documentTfIdfVectors;
+    /**
+     * Builds the index using the threads of the given pool. The result is exactly
+     * the same (down to the ids handed out) as when building it on a single thread.
+     */
+    public TfIdfAnalyzer(ISet<Webpage> webpages, ForkJoinPool pool) {
+        this(CorpusStatistics.of(webpages, pool), pool);
     }
 
+    /**
+     * Builds the index of the pages counted by the given statistics, using the
+     * threads of the given pool. Words and documents keep the ids given to them by
+     * the statistics.
+     */
+    public TfIdfAnalyzer(CorpusStatistics corpus, ForkJoinPool pool) {
+        this.terms = corpus.getTerms();
+        this.documents = corpus.getDocuments();
+        this.idfScores = this.computeIdfScores(corpus);
+        this.documentTfIdfVectors = this.computeAllDocumentTfIdfVectors(corpus, pool);
+        this.queryScratch = ThreadLocal.withInitial(QueryScratch::new);
+    }
 
     /**
-     * @author Catherine Yoo
-     * 
-     * Returns a dictionary mapping every single unique word found
-     * in every single document to their IDF score.
-     * 
-     * @param pages - A set of pages representing documents 
-     * 
+     * Returns the registry assigning an id to every document given to the constructor.
      */
-    private IDictionary<String, Double> computeIdfScores(ISet<Webpage> pages) {
-        IDictionary<String, Double> result = new ChainedHashDictionary<String, Double>();
-        
-        for (Webpage page : pages) {
-            ISet<String> words = new ChainedHashSet<String>();
-            for (String word : page.getWords()) {
-                words.add(word);
-            }
-            
-            for (String word : words) {
-                //if (result.getOrDefault(word, null) == null) {
-                if (!result.containsKey(word)) { 
-                    result.put(word, 1.0);
-                } else {
-                    result.put(word, result.get(word) + 1.0);
-                }
-            }
-        }
-        
-        for (KVPair<String, Double> pair : result) {
-            double idf = Math.log(pages.size() / pair.getValue());
-            result.put(pair.getKey(), idf);
-        }
-        return result;
+    public IdRegistry<URI> getDocuments() {
+        return this.documents;
+    }
+
+    /**
+     * Returns the registry assigning an id to every word found in any document.
+     */
+    public IdRegistry<String> getTerms() {
+        return this.terms;
+    }
+
+    /**
+     * Returns the IDF score of the word with the given term id.
+     */
+    public double getIdfScore(int termId) {
+        return this.idfScores[termId];
+    }
+
+    /**
+     * Returns the TF-IDF vector of the document with the given id.
+     */
+    public SparseVector getDocumentTfIdfVector(int id) {
+        return this.documentTfIdfVectors[id];
+    }
+
+    /**
+     * Returns the posting list of the word with the given term id. The TF score of
+     * the word in a document is its frequency there divided by the document's length.
+     */
+    public PostingList getPostings(int termId) {
+        return this.invertedIndex[termId];
+    }
+
+    /**
+     * Returns the number of words in the document with the given id.
+     */
+    public int getDocumentLength(int id) {
+        return this.documentLengths[id];
+    }
+
+    /**
+     * Returns the norm of the TF-IDF vector of the document with the given id.
+     */
+    public double getDocumentNorm(int id) {
+        return this.documentNorms[id];
     }
 
 
     /**
      * @author Catherine Yoo
-     * 
-     * Returns a dictionary mapping every unique word found in the given list
-     * to their term frequency (TF) score.
-     * 
-     * @param words - A list of all the words in a single document. 
      *
-     */ 
-    private IDictionary<String, Double> computeTfScores(IList<String> words) {
-        IDictionary<String, Double> result = new ChainedHashDictionary<String, Double>();
-        
-        for (String word : words) {
-            //if (result.getOrDefault(word, null) != null) {
-            if (result.containsKey(word)) {
-                result.put(word, result.get(word) + 1.0);
-            } else {
-                result.put(word, 1.0);
-            }
-        }
-        
-        for (KVPair<String, Double> pair : result) {
-            double tf = pair.getValue() / words.size();
-            result.put(pair.getKey(), tf);
+     * Returns an array mapping the term id of every single unique word found
+     * in every single document to its IDF score.
+     *
+     * @param corpus - The statistics of the documents
+     *
+     */
+    private double[] computeIdfScores(CorpusStatistics corpus) {
+        double[] result = new double[this.terms.size()];
+        for (int id = 0; id < result.length; id++) {
+            result[id] = Math.log(corpus.getDocumentCount() / (double) corpus.getDocumentFrequency(id));
         }
-
-        return result; 
+        return result;
     }
 
+
     /**
      * @author Catherine Yoo
-     * 
-     * Returns a dictionary mapping each document to its TF-IDF vectors. 
-     * 
-     * @param pages - A set of pages representing documents 
-     * 
+     *
+     * Returns an array mapping each document id to the document's TF-IDF vector.
+     *
+     * Also records the norm of every vector in 'documentNorms', so queries never
+     * need to recompute it, and the length of every document in 'documentLengths',
+     * and builds the posting list of every word in 'invertedIndex'.
+     *
+     * The vectors are computed in parallel, but the posting lists are filled in
+     * afterwards, one document at a time in increasing id order, which keeps each
+     * of them sorted by id.
+     *
+     * @param corpus - The statistics of the documents
+     *
      * */
-    private IDictionary<URI, IDictionary<String, Double>> computeAllDocumentTfIdfVectors(ISet<Webpage> pages) {
-        IDictionary<URI, IDictionary<String, Double>> result = 
-                new ChainedHashDictionary<URI, IDictionary<String, Double>>();
-        for (Webpage page : pages) {
-            IDictionary<String, Double> tfScores = computeTfScores(page.getWords());
-            IDictionary<String, Double> vector = new ChainedHashDictionary<String, Double>();
-            for (KVPair<String, Double> pair : tfScores) {
-                double idfScore = this.idfScores.get(pair.getKey());
-                vector.put(pair.getKey(), idfScore * pair.getValue());
+    private SparseVector[] computeAllDocumentTfIdfVectors(CorpusStatistics corpus, ForkJoinPool pool) {
+        int documentCount = corpus.getDocumentCount();
+        SparseVector[] result = new SparseVector[documentCount];
+        this.documentNorms = new double[documentCount];
+        this.documentLengths = new int[documentCount];
+
+        ParallelLoop.forEachChunk(pool, documentCount, CHUNK_SIZE, (chunk, start, end) -> {
+            for (int id = start; id < end; id++) {
+                int length = corpus.getDocumentLength(id);
+                int[] termIds = corpus.getTermIds(id);
+                int[] counts = corpus.getTermCounts(id);
+                float[] scores = new float[termIds.length];
+                for (int i = 0; i < termIds.length; i++) {
+                    double tf = counts[i] / (double) length;
+                    scores[i] = (float) (this.idfScores[termIds[i]] * tf);
+                }
+
+                result[id] = SparseVector.of(termIds, scores);
+                this.documentNorms[id] = result[id].norm();
+                this.documentLengths[id] = length;
             }
-            //if (result.getOrDefault(page.getUri(), null) == null) {
-            if (!result.containsKey(page.getUri())) {
-                result.put(page.getUri(), vector);
+        });
+
+        PostingList.Builder[] builders = new PostingList.Builder[this.terms.size()];
+        for (int termId = 0; termId < builders.length; termId++) {
+            builders[termId] = new PostingList.Builder();
+        }
+        for (int id = 0; id < documentCount; id++) {
+            int[] termIds = corpus.getTermIds(id);
+            int[] counts = corpus.getTermCounts(id);
+            for (int i = 0; i < termIds.length; i++) {
+                builders[termIds[i]].add(id, counts[i]);
             }
         }
-        
-        return result; 
+
+        this.invertedIndex = new PostingList[builders.length];
+        for (int termId = 0; termId < builders.length; termId++) {
+            this.invertedIndex[termId] = builders[termId].build();
+        }
+        return result;
     }
 
     /**
      * @author Catherine Yoo
-     * 
+     *
      * Returns the cosine similarity between the TF-IDF vector for the given query and the
      * URI's document.
      *
      * Precondition: the given uri must have been one of the uris within the list of
      *               webpages given to the constructor.
      */
-    
+
     public double computeRelevance(IList<String> query, URI pageUri) {
-        IDictionary<String, Double> documentVector = this.documentTfIdfVectors.get(pageUri);
-        IDictionary<String, Double> wordTfScores = computeTfScores(query);
-        
-        for (KVPair<String, Double> pair : wordTfScores) {
-            String word = pair.getKey();
-            double wordTf = pair.getValue();
-            //if (idfScores.getOrDefault(word, null) != null) {
-            if (idfScores.containsKey(word)) {
-                double wordIdf = idfScores.get(word);
-                double wordTfIdf = wordTf * wordIdf;
-                queryVector.put(word, wordTfIdf);
-            } else {
-                queryVector.put(word, 0.0);
-            }
-        }
-       
-        double denominator = norm(documentVector) * norm(queryVector);
+        int id = this.documents.getId(pageUri);
+        SparseVector documentVector = this.documentTfIdfVectors[id];
+        QueryScratch queryVector = this.queryScratch.get();
+        queryVector.compute(query, this.terms, this.idfScores);
+
+        double denominator = this.documentNorms[id] * queryVector.norm();
         if (denominator != 0) {
+            // Words that are in no document add nothing, and words repeated in
+            // the query are counted as many times as they appear.
             double numerator = 0.0;
-            for (String word : query) {
-                double docWordScore = 0.0;
-                //if (documentVector.getOrDefault(word, null) != null) {
-                if (documentVector.containsKey(word)) {
-                    docWordScore = documentVector.get(word);
-                } 
-                double queryWordScore = queryVector.get(word);
-                numerator += docWordScore * queryWordScore;
+            for (int i = 0; i < queryVector.wordCount; i++) {
+                int slot = queryVector.slots[i];
+                if (slot >= 0) {
+                    numerator += documentVector.get(queryVector.termIds[slot]) * queryVector.weights[slot];
+                }
             }
             return numerator / denominator;
         } else {
@@ -177,12 +237,76 @@ public class TfIdfAnalyzer {
         }
     }
 
-    private double norm(IDictionary<String, Double> vector) {
-        double output = 0.0;
-        for (KVPair<String, Double> pair : vector) {
-            double score = pair.getValue();
-            output += score * score;
+    /**
+     * Per-thread TF-IDF vector of a query, in arrays grown to fit the longest query
+     * seen so far.
+     *
+     * 'termIds' and 'weights' hold the distinct words of the query that appear in
+     * some document, in order of first appearance, and their TF-IDF scores; 'slots'
+     * gives the position there of every word of the query, or -1 for words that
+     * never appear in any document (whose score is zero).
+     */
+    private static class QueryScratch {
+        private int[] termIds;
+        private double[] weights;
+        private int[] slots;
+        private int termCount;
+        private int wordCount;
+
+        public QueryScratch() {
+            this.termIds = new int[0];
+            this.weights = new double[0];
+            this.slots = new int[0];
+            this.termCount = 0;
+            this.wordCount = 0;
+        }
+
+        public void compute(IList<String> query, IdRegistry<String> terms, double[] idfScores) {
+            int size = query.size();
+            if (this.slots.length < size) {
+                this.termIds = new int[size];
+                this.weights = new double[size];
+                this.slots = new int[size];
+            }
+            this.termCount = 0;
+            this.wordCount = size;
+
+            // Queries are a few words long, so looking for repeated words one by one
+            // is cheaper than hashing them.
+            int i = 0;
+            for (String word : query) {
+                int termId = terms.getIdOrDefault(word);
+                int slot = -1;
+                if (termId >= 0) {
+                    for (int j = 0; j < this.termCount && slot < 0; j++) {
+                        if (this.termIds[j] == termId) {
+                            slot = j;
+                        }
+                    }
+                    if (slot < 0) {
+                        slot = this.termCount;
+                        this.termIds[slot] = termId;
+                        this.weights[slot] = 0.0;
+                        this.termCount++;
+                    }
+                    this.weights[slot]++;
+                }
+                this.slots[i] = slot;
+                i++;
+            }
+
+            for (int j = 0; j < this.termCount; j++) {
+                double tf = this.weights[j] / (double) size;
+                this.weights[j] = tf * idfScores[this.termIds[j]];
+            }
+        }
+
+        public double norm() {
+            double output = 0.0;
+            for (int j = 0; j < this.termCount; j++) {
+                output += this.weights[j] * this.weights[j];
+            }
+            return Math.sqrt(output);
         }
-        return Math.sqrt(output);
     }
 }
@@ -0,0 +1,115 @@
+package search.analyzers.pagerank;
+
+import java.util.Arrays;
+
+/**
+ * Computes page ranks by "adaptive" power iteration over a LinkGraph.
+ *
+ * Most of the time spent in power iteration goes to pulling rank along the links
+ * into every page, yet most pages settle down long before the slowest ones do.
+ * Once the rank a page pulls in along its links has barely moved for a couple of
+ * iterations in a row, this solver freezes it: the page keeps the rank it last
+ * pulled in, and we stop looking at the links pointing to it.
+ *
+ * Frozen pages still receive their share of the rank of dangling pages, which
+ * keeps moving until the very end. But they miss out on the changes the pages
+ * linking to them may still go through, so every so often (and before we stop) we
+ * thaw every page and do a full iteration.
+ */
+public class AdaptivePowerIteration {
+    // A page is frozen once the rank it pulls in moves by less than epsilon divided
+    // by this for FREEZE_AFTER iterations in a row.
+    private static final double FREEZE_MARGIN = 10.0;
+    private static final int FREEZE_AFTER = 2;
+
+    // Every page is thawed every THAW_PERIOD iterations.
+    private static final int THAW_PERIOD = 10;
+
+    /**
+     * Returns the page rank of every page of the given graph.
+     *
+     * Starting with a rank of 1 / N for every page, iterates until no rank moves by
+     * 'epsilon' or more in an iteration over all the pages, or until 'limit'
+     * iterations have run.
+     */
+    public static PageRankResult solve(LinkGraph graph, double decay, double epsilon, int limit) {
+        int pageCount = graph.getPageCount();
+        int[] offsets = graph.getOffsets();
+        int[] sources = graph.getSources();
+        int[] outDegrees = graph.getOutDegrees();
+
+        double[] ranks = PageRankResult.makeInitialRanks(pageCount);
+        double[] shares = new double[pageCount];
+        // linkRanks[v] is the rank page 'v' last pulled in along its links, and
+        // calmIterations[v] the number of iterations in a row it barely moved.
+        double[] linkRanks = new double[pageCount];
+        int[] calmIterations = new int[pageCount];
+        double[] residuals = new double[16];
+
+        // The pages that are not frozen are active[0] up to active[activeCount - 1].
+        int[] active = new int[pageCount];
+        int activeCount = thawAll(active);
+
+        int iterations = 0;
+        while (iterations < limit) {
+            boolean fullIteration = activeCount == pageCount;
+
+            double danglingRank = 0.0;
+            for (int page = 0; page < pageCount; page++) {
+                if (outDegrees[page] == 0) {
+                    danglingRank += ranks[page];
+                } else {
+                    shares[page] = ranks[page] / outDegrees[page];
+                }
+            }
+
+            int stillActive = 0;
+            for (int i = 0; i < activeCount; i++) {
+                int page = active[i];
+                double sum = 0.0;
+                for (int j = offsets[page]; j < offsets[page + 1]; j++) {
+                    sum += shares[sources[j]];
+                }
+                if (iterations > 0 && decay * Math.abs(sum - linkRanks[page]) < epsilon / FREEZE_MARGIN) {
+                    calmIterations[page]++;
+                } else {
+                    calmIterations[page] = 0;
+                }
+                if (calmIterations[page] < FREEZE_AFTER) {
+                    active[stillActive] = page;
+                    stillActive++;
+                }
+                linkRanks[page] = sum;
+            }
+            activeCount = stillActive;
+
+            double base = (1.0 - decay) / pageCount + decay * danglingRank / pageCount;
+            double residual = 0.0;
+            for (int page = 0; page < pageCount; page++) {
+                double newRank = base + decay * linkRanks[page];
+                residual = Math.max(residual, Math.abs(newRank - ranks[page]));
+                ranks[page] = newRank;
+            }
+            residuals = PageRankResult.record(residuals, iterations, residual);
+            iterations++;
+
+            if (residual < epsilon && fullIteration) {
+                break;
+            }
+            if (residual < epsilon || iterations % THAW_PERIOD == 0) {
+                activeCount = thawAll(active);
+            }
+        }
+        return new PageRankResult(ranks, Arrays.copyOf(residuals, iterations));
+    }
+
+    /**
+     * Marks every page as active, returning the number of active pages.
+     */
+    private static int thawAll(int[] active) {
+        for (int page = 0; page < active.length; page++) {
+            active[page] = page;
+        }
+        return active.length;
+    }
+}
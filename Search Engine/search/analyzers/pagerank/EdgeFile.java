@@ -0,0 +1,251 @@
+package search.analyzers.pagerank;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * A directed graph of links between pages stored in a file, in the same form as a
+ * LinkGraph, and accessed through a memory mapping. Pages are only known by id.
+ *
+ * Only the parts of the file being read are in memory, and the operating system
+ * drops them again as needed, so a graph can be far larger than the heap. Every
+ * section of the file is read from start to end (see Cursor), which is the access
+ * pattern memory mappings and disks handle best. See MappedPowerIteration.
+ *
+ * File layout (all numbers big-endian; every section starts on an 8 byte boundary):
+ *
+ *     header        int magic, int version, int page count, 4 bytes of padding,
+ *                   long link count
+ *     out degrees   int[pageCount], the number of links leaving every page
+ *     in degrees    int[pageCount], the number of links pointing to every page
+ *     sources       int[linkCount], the pages linking to page 0 in increasing
+ *                   order, then those linking to page 1, and so on
+ */
+public class EdgeFile {
+    static final int MAGIC = 0x45444731; // "EDG1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 24;
+
+    // A single mapping cannot cover more than 2GB, so we map the file in windows
+    // of this many bytes. This is a multiple of 8, so no number straddles two windows.
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    private final ByteBuffer[] windows;
+    private final int pageCount;
+    private final long linkCount;
+
+    private EdgeFile(ByteBuffer[] windows) {
+        ByteBuffer header = windows[0];
+        if (header.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not an edge file");
+        }
+        if (header.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported edge file version " + header.getInt(4));
+        }
+        this.windows = windows;
+        this.pageCount = header.getInt(8);
+        this.linkCount = header.getLong(16);
+    }
+
+    /**
+     * Memory-maps the edge file stored at the given path.
+     *
+     * @throws IOException               if the file cannot be read
+     * @throws IllegalArgumentException  if the file is not an edge file this class can read
+     */
+    public static EdgeFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IllegalArgumentException("Not an edge file");
+            }
+            ByteBuffer[] windows = new ByteBuffer[(int) ((size + WINDOW_SIZE - 1) / WINDOW_SIZE)];
+            for (int i = 0; i < windows.length; i++) {
+                long start = i * WINDOW_SIZE;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start));
+            }
+            return new EdgeFile(windows);
+        }
+    }
+
+    /**
+     * Writes a graph of 'pageCount' pages to the given file, replacing it if it
+     * already exists. Page 'u' links to every page in outLinks.apply(u). Links from
+     * a page to itself are dropped.
+     *
+     * 'outLinks' is called twice per page: once to count the links pointing to every
+     * page, which tells where the sources of each page's links start in the file,
+     * and once to write every source straight to its place. The file is written
+     * through a memory mapping, so only the counts are held in memory. Visiting the
+     * sources in increasing order keeps every list of sources sorted. Like
+     * SegmentWriter, this writes to a temporary file first.
+     *
+     * @throws IllegalArgumentException  if a page links to another page twice, or
+     *                                   to a page outside of the graph
+     */
+    public static void write(Path path, int pageCount, IntFunction<int[]> outLinks) throws IOException {
+        int[] outDegrees = new int[pageCount];
+        int[] inDegrees = new int[pageCount];
+        long linkCount = 0;
+        for (int source = 0; source < pageCount; source++) {
+            int[] targets = outLinks.apply(source).clone();
+            Arrays.sort(targets);
+            for (int i = 0; i < targets.length; i++) {
+                if (targets[i] < 0 || targets[i] >= pageCount) {
+                    throw new IllegalArgumentException("Page " + source + " links outside of the graph");
+                }
+                if (targets[i] != source) {
+                    if (i > 0 && targets[i] == targets[i - 1]) {
+                        throw new IllegalArgumentException(
+                                "Page " + source + " links to page " + targets[i] + " twice");
+                    }
+                    outDegrees[source]++;
+                    inDegrees[targets[i]]++;
+                    linkCount++;
+                }
+            }
+        }
+
+        long sourcesStart = HEADER_SIZE + 2 * padded(pageCount);
+        long size = sourcesStart + linkCount * 4;
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer[] windows = new ByteBuffer[(int) ((size + WINDOW_SIZE - 1) / WINDOW_SIZE)];
+            for (int i = 0; i < windows.length; i++) {
+                long start = i * WINDOW_SIZE;
+                windows[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(WINDOW_SIZE, size - start));
+            }
+
+            windows[0].putInt(0, MAGIC);
+            windows[0].putInt(4, VERSION);
+            windows[0].putInt(8, pageCount);
+            windows[0].putInt(12, 0);
+            windows[0].putLong(16, linkCount);
+            // next[page] is the byte offset the next source linking to 'page' goes to.
+            long[] next = new long[pageCount];
+            long position = sourcesStart;
+            for (int page = 0; page < pageCount; page++) {
+                putInt(windows, HEADER_SIZE + 4L * page, outDegrees[page]);
+                putInt(windows, HEADER_SIZE + padded(pageCount) + 4L * page, inDegrees[page]);
+                next[page] = position;
+                position += 4L * inDegrees[page];
+            }
+            outDegrees = null;
+            inDegrees = null;
+
+            for (int source = 0; source < pageCount; source++) {
+                for (int target : outLinks.apply(source)) {
+                    if (target != source) {
+                        putInt(windows, next[target], source);
+                        next[target] += 4;
+                    }
+                }
+            }
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes the given number at the given byte offset of a file mapped in windows.
+     * Numbers never straddle two windows (see WINDOW_SIZE).
+     */
+    private static void putInt(ByteBuffer[] windows, long offset, int value) {
+        windows[(int) (offset / WINDOW_SIZE)].putInt((int) (offset % WINDOW_SIZE), value);
+    }
+
+    /**
+     * Returns the number of pages in the graph.
+     */
+    public int getPageCount() {
+        return this.pageCount;
+    }
+
+    /**
+     * Returns the number of links in the graph.
+     */
+    public long getLinkCount() {
+        return this.linkCount;
+    }
+
+    /**
+     * Returns a cursor over the number of links leaving every page, in page order.
+     */
+    Cursor readOutDegrees() {
+        return new Cursor(HEADER_SIZE, this.pageCount);
+    }
+
+    /**
+     * Returns a cursor over the number of links pointing to every page, in page order.
+     */
+    Cursor readInDegrees() {
+        return new Cursor(HEADER_SIZE + padded(this.pageCount), this.pageCount);
+    }
+
+    /**
+     * Returns a cursor over the sources of every link, grouped by the page they
+     * point to (see the class comment).
+     */
+    Cursor readSources() {
+        return new Cursor(HEADER_SIZE + 2 * padded(this.pageCount), this.linkCount);
+    }
+
+    /**
+     * Returns the number of bytes taken up by a section of the given number of ints.
+     */
+    private static long padded(int count) {
+        return (count + 1) / 2 * 8L;
+    }
+
+    /**
+     * Reads a section of ints from start to end, one window at a time.
+     */
+    class Cursor {
+        private int window;
+        private long remaining;
+        private IntBuffer current;
+
+        private Cursor(long start, long count) {
+            this.window = (int) (start / WINDOW_SIZE);
+            this.remaining = count;
+            this.current = this.view((int) (start % WINDOW_SIZE));
+        }
+
+        /**
+         * Returns the next number of the section.
+         *
+         * @throws java.nio.BufferUnderflowException  if the whole section has been read
+         */
+        int next() {
+            if (!this.current.hasRemaining()) {
+                this.window++;
+                this.current = this.view(0);
+            }
+            return this.current.get();
+        }
+
+        /**
+         * Returns the numbers of the section not read yet in the current window,
+         * starting at the given byte offset, and counts them as read.
+         */
+        private IntBuffer view(int offset) {
+            if (this.remaining == 0) {
+                return IntBuffer.allocate(0);
+            }
+            ByteBuffer view = EdgeFile.this.windows[this.window].duplicate();
+            int count = (int) Math.min(this.remaining, (view.limit() - offset) / 4);
+            view.position(offset);
+            view.limit(offset + count * 4);
+            this.remaining -= count;
+            return view.slice().asIntBuffer();
+        }
+    }
+}
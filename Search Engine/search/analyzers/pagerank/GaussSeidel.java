@@ -0,0 +1,82 @@
+package search.analyzers.pagerank;
+
+import java.util.Arrays;
+
+/**
+ * Computes page ranks by Gauss-Seidel iteration over a LinkGraph.
+ *
+ * This works like PowerIteration, except that ranks are updated in place: when a
+ * page pulls rank from the pages linking to it, it already sees the new rank of
+ * every page updated earlier in the same iteration. Rank therefore travels along
+ * many links per iteration, which usually takes far fewer iterations to converge.
+ *
+ * Updating in place does not keep the ranks adding up to 1 the way power iteration
+ * does, and the total would then only converge slowly (the rank of dangling pages
+ * feeds back into every page), so we rescale the ranks after every iteration.
+ *
+ * Since every page depends on the pages before it, this runs on a single thread.
+ */
+public class GaussSeidel {
+    /**
+     * Returns the page rank of every page of the given graph.
+     *
+     * Starting with a rank of 1 / N for every page, iterates until no rank moves by
+     * 'epsilon' or more in one iteration, or until 'limit' iterations have run.
+     */
+    public static PageRankResult solve(LinkGraph graph, double decay, double epsilon, int limit) {
+        int pageCount = graph.getPageCount();
+        int[] offsets = graph.getOffsets();
+        int[] sources = graph.getSources();
+        int[] outDegrees = graph.getOutDegrees();
+
+        double[] ranks = PageRankResult.makeInitialRanks(pageCount);
+        double[] shares = new double[pageCount];
+        double danglingRank = 0.0;
+        for (int page = 0; page < pageCount; page++) {
+            if (outDegrees[page] == 0) {
+                danglingRank += ranks[page];
+            } else {
+                shares[page] = ranks[page] / outDegrees[page];
+            }
+        }
+        double[] oldRanks = new double[pageCount];
+        double[] residuals = new double[16];
+
+        int iterations = 0;
+        while (iterations < limit) {
+            System.arraycopy(ranks, 0, oldRanks, 0, pageCount);
+            double total = 0.0;
+            for (int page = 0; page < pageCount; page++) {
+                double sum = 0.0;
+                for (int j = offsets[page]; j < offsets[page + 1]; j++) {
+                    sum += shares[sources[j]];
+                }
+                double newRank = (1.0 - decay) / pageCount + decay * danglingRank / pageCount + decay * sum;
+
+                // Publish the new rank right away, so later pages pull it in.
+                if (outDegrees[page] == 0) {
+                    danglingRank += newRank - ranks[page];
+                } else {
+                    shares[page] = newRank / outDegrees[page];
+                }
+                ranks[page] = newRank;
+                total += newRank;
+            }
+
+            double residual = 0.0;
+            for (int page = 0; page < pageCount; page++) {
+                ranks[page] /= total;
+                shares[page] /= total;
+                residual = Math.max(residual, Math.abs(ranks[page] - oldRanks[page]));
+            }
+            danglingRank /= total;
+            residuals = PageRankResult.record(residuals, iterations, residual);
+            iterations++;
+
+            if (residual < epsilon) {
+                break;
+            }
+        }
+        return new PageRankResult(ranks, Arrays.copyOf(residuals, iterations));
+    }
+}
@@ -0,0 +1,205 @@
+package search.analyzers.pagerank;
+
+import java.util.Arrays;
+
+/**
+ * Gives the pages of a LinkGraph new ids, to speed up computing page rank.
+ *
+ * To compute the new rank of a page, we read the rank of every page linking to
+ * it. The pages of a crawl are numbered in no particular order, so those reads
+ * jump all over the array of ranks, and most of them miss the cache once the
+ * graph gets large. Numbering pages so that linked pages get nearby ids (see
+ * PageOrdering) turns many of them into cache hits.
+ *
+ * Page ranks do not depend on the ids of the pages, so reordering the graph
+ * changes nothing but the running time (and rounding). See restoreOrder() for
+ * mapping the ranks back to the original ids.
+ */
+public class GraphReordering {
+    /**
+     * Returns the order in which the pages of the given graph should be numbered:
+     * page order[i] should become page 'i' (see reorder()).
+     */
+    public static int[] computeOrder(LinkGraph graph, PageOrdering ordering) {
+        if (ordering == PageOrdering.DEGREE) {
+            return sortByOutDegree(graph);
+        } else if (ordering == PageOrdering.BREADTH_FIRST) {
+            return visitBreadthFirst(graph, false);
+        } else if (ordering == PageOrdering.REVERSE_CUTHILL_MCKEE) {
+            int[] order = visitBreadthFirst(graph, true);
+            for (int i = 0, j = order.length - 1; i < j; i++, j--) {
+                int temp = order[i];
+                order[i] = order[j];
+                order[j] = temp;
+            }
+            return order;
+        } else {
+            int[] order = new int[graph.getPageCount()];
+            for (int page = 0; page < order.length; page++) {
+                order[page] = page;
+            }
+            return order;
+        }
+    }
+
+    /**
+     * Returns the same graph with its pages numbered in the given order: page
+     * order[i] of the given graph becomes page 'i'.
+     *
+     * The links are renumbered right away, but the registry of the new graph is
+     * only built if getPages() is called, which takes longer than renumbering. To
+     * look up page ranks by uri, map them back to the ids of the original graph with
+     * restoreOrder() instead.
+     *
+     * @throws IllegalArgumentException  if the order does not contain every page exactly once
+     */
+    public static LinkGraph reorder(LinkGraph graph, int[] order) {
+        return graph.permute(order);
+    }
+
+    /**
+     * Returns the given result, computed over reorder(graph, order), with its ranks
+     * indexed by the ids of the pages in 'graph' again.
+     */
+    public static PageRankResult restoreOrder(PageRankResult result, int[] order) {
+        double[] ranks = result.getRanks();
+        double[] restored = new double[ranks.length];
+        for (int i = 0; i < order.length; i++) {
+            restored[order[i]] = ranks[i];
+        }
+        return new PageRankResult(restored, result.getResiduals());
+    }
+
+    /**
+     * Returns the pages sorted by the number of links leaving them, most first,
+     * keeping pages with as many links in their current order.
+     */
+    private static int[] sortByOutDegree(LinkGraph graph) {
+        int pageCount = graph.getPageCount();
+        int[] outDegrees = graph.getOutDegrees();
+        int maxDegree = 0;
+        for (int page = 0; page < pageCount; page++) {
+            maxDegree = Math.max(maxDegree, outDegrees[page]);
+        }
+
+        // Counting sort: starts[d] is where the pages with d links go (before the
+        // pages with fewer links).
+        int[] starts = new int[maxDegree + 2];
+        for (int page = 0; page < pageCount; page++) {
+            starts[maxDegree - outDegrees[page] + 1]++;
+        }
+        for (int i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
+        }
+        int[] order = new int[pageCount];
+        for (int page = 0; page < pageCount; page++) {
+            int bucket = maxDegree - outDegrees[page];
+            order[starts[bucket]] = page;
+            starts[bucket]++;
+        }
+        return order;
+    }
+
+    /**
+     * Returns the pages in the order a breadth-first search visits them, following
+     * links either way. Every time the search runs out of pages, it starts over
+     * from the first page not visited yet, or, if 'fewestLinksFirst' is set, from
+     * the page with the fewest links among those; in that case the neighbors of
+     * every page are also visited by increasing number of links.
+     */
+    private static int[] visitBreadthFirst(LinkGraph graph, boolean fewestLinksFirst) {
+        int pageCount = graph.getPageCount();
+        int[] inOffsets = graph.getOffsets();
+        int[] inSources = graph.getSources();
+        LinkGraph reverse = graph.reverse();
+        int[] outOffsets = reverse.getOffsets();
+        int[] outTargets = reverse.getSources();
+
+        int[] degrees = new int[pageCount];
+        for (int page = 0; page < pageCount; page++) {
+            degrees[page] = graph.getInDegree(page) + graph.getOutDegree(page);
+        }
+        // Restarting from the page with the fewest links means trying pages in that order.
+        int[] starts = fewestLinksFirst ? sortByIncreasingDegree(degrees) : null;
+
+        // The visited pages are order[0] up to order[visited - 1]; those whose
+        // neighbors we have not visited yet are order[next] up to order[visited - 1].
+        int[] order = new int[pageCount];
+        boolean[] seen = new boolean[pageCount];
+        int visited = 0;
+        int next = 0;
+        int start = 0;
+        while (visited < pageCount) {
+            if (next == visited) {
+                while (seen[starts != null ? starts[start] : start]) {
+                    start++;
+                }
+                int page = starts != null ? starts[start] : start;
+                seen[page] = true;
+                order[visited] = page;
+                visited++;
+            }
+            int page = order[next];
+            next++;
+
+            int first = visited;
+            for (int j = inOffsets[page]; j < inOffsets[page + 1]; j++) {
+                visited = visit(inSources[j], seen, order, visited);
+            }
+            for (int j = outOffsets[page]; j < outOffsets[page + 1]; j++) {
+                visited = visit(outTargets[j], seen, order, visited);
+            }
+            if (fewestLinksFirst) {
+                sortByDegree(order, first, visited, degrees);
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Appends the given page to the order unless it has already been seen, and
+     * returns the new number of visited pages.
+     */
+    private static int visit(int page, boolean[] seen, int[] order, int visited) {
+        if (seen[page]) {
+            return visited;
+        }
+        seen[page] = true;
+        order[visited] = page;
+        return visited + 1;
+    }
+
+    /**
+     * Returns every page sorted by increasing degree, keeping pages of the same
+     * degree in id order.
+     */
+    private static int[] sortByIncreasingDegree(int[] degrees) {
+        int[] order = new int[degrees.length];
+        for (int page = 0; page < degrees.length; page++) {
+            order[page] = page;
+        }
+        sortByDegree(order, 0, order.length, degrees);
+        return order;
+    }
+
+    /**
+     * Sorts pages[start] up to pages[end - 1] by increasing degree, keeping pages
+     * of the same degree in their current order.
+     */
+    private static void sortByDegree(int[] pages, int start, int end, int[] degrees) {
+        if (end - start < 2) {
+            return;
+        }
+        // Sorting (degree, position) pairs packed into longs keeps the sort stable.
+        long[] keys = new long[end - start];
+        for (int i = start; i < end; i++) {
+            keys[i - start] = (long) degrees[pages[i]] << 32 | (i - start);
+        }
+        Arrays.sort(keys);
+        int[] sorted = new int[end - start];
+        for (int i = 0; i < keys.length; i++) {
+            sorted[i] = pages[start + (int) keys[i]];
+        }
+        System.arraycopy(sorted, 0, pages, start, sorted.length);
+    }
+}
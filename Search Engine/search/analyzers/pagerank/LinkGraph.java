@@ -0,0 +1,277 @@
+package search.analyzers.pagerank;
+
+import datastructures.concrete.KVPair;
+import datastructures.interfaces.IDictionary;
+import datastructures.interfaces.ISet;
+import search.index.IdRegistry;
+
+import java.net.URI;
+import java.util.Arrays;
+
+/**
+ * An immutable, directed graph of links between pages, stored in "compressed
+ * sparse row" form: plain int arrays rather than a dictionary of sets.
+ *
+ * Every page is given a dense id. The links pointing to page 'v' come from the
+ * pages sources[offsets[v]] up to (but not including) sources[offsets[v + 1]], in
+ * increasing order. Storing incoming rather than outgoing links lets page rank be
+ * computed by "pulling" the rank of every page from the pages linking to it.
+ *
+ * A graph never contains links from a page to itself, duplicate links, or links
+ * to pages outside of the graph.
+ */
+public class LinkGraph {
+    private final int[] offsets;
+    private final int[] sources;
+    private final int[] outDegrees;
+
+    // The pages of a graph made by permute() only get a registry of their own when
+    // someone asks for it, since building one takes longer than permuting the links.
+    // Until then, page 'i' is page order[i] of 'originalPages'.
+    private IdRegistry<URI> pages;
+    private final IdRegistry<URI> originalPages;
+    private final int[] order;
+
+    /**
+     * Creates a graph of the given pages where page 'u' links to every page in
+     * outLinks[u]. Links from a page to itself are dropped.
+     *
+     * @throws IllegalArgumentException  if a page links to another page twice, or
+     *                                   to a page outside of the graph
+     */
+    public LinkGraph(IdRegistry<URI> pages, int[][] outLinks) {
+        this(pages.size(), outLinks);
+        this.pages = pages;
+    }
+
+    /**
+     * Same as above, but for 'pageCount' pages that are only known by id, like
+     * those of an EdgeFile. Such a graph has no registry (see getPages()), which
+     * makes it far cheaper to build when the uris do not matter, as in benchmarks.
+     */
+    public LinkGraph(int pageCount, int[][] outLinks) {
+        if (outLinks.length != pageCount) {
+            throw new IllegalArgumentException("Every page needs exactly one list of links");
+        }
+        this.pages = null;
+        this.originalPages = null;
+        this.order = null;
+        this.outDegrees = new int[pageCount];
+        this.offsets = new int[pageCount + 1];
+
+        // Count the links pointing to every page, then turn the counts into offsets.
+        for (int source = 0; source < pageCount; source++) {
+            for (int target : outLinks[source]) {
+                if (target < 0 || target >= pageCount) {
+                    throw new IllegalArgumentException("Page " + source + " links outside of the graph");
+                }
+                if (target != source) {
+                    this.offsets[target + 1]++;
+                    this.outDegrees[source]++;
+                }
+            }
+        }
+        for (int page = 0; page < pageCount; page++) {
+            this.offsets[page + 1] += this.offsets[page];
+        }
+
+        // Visiting the sources in increasing order keeps every list of sources sorted.
+        this.sources = new int[this.offsets[pageCount]];
+        int[] next = new int[pageCount];
+        System.arraycopy(this.offsets, 0, next, 0, pageCount);
+        for (int source = 0; source < pageCount; source++) {
+            for (int target : outLinks[source]) {
+                if (target != source) {
+                    if (next[target] > this.offsets[target] && this.sources[next[target] - 1] == source) {
+                        throw new IllegalArgumentException("Page " + source + " links to page " + target + " twice");
+                    }
+                    this.sources[next[target]] = source;
+                    next[target]++;
+                }
+            }
+        }
+    }
+
+    private LinkGraph(IdRegistry<URI> pages, IdRegistry<URI> originalPages, int[] order,
+                      int[] offsets, int[] sources, int[] outDegrees) {
+        this.pages = pages;
+        this.originalPages = originalPages;
+        this.order = order;
+        this.offsets = offsets;
+        this.sources = sources;
+        this.outDegrees = outDegrees;
+    }
+
+    /**
+     * Returns the graph represented by the given dictionary, which maps the uri of
+     * every page to the uris of the pages it links to. Pages are given ids in the
+     * order in which the dictionary returns them.
+     *
+     * @throws IllegalArgumentException  if a page links to a page outside of the graph
+     */
+    public static LinkGraph of(IDictionary<URI, ISet<URI>> graph) {
+        IdRegistry<URI> pages = new IdRegistry<>();
+        for (KVPair<URI, ISet<URI>> pair : graph) {
+            pages.register(pair.getKey());
+        }
+
+        int[][] outLinks = new int[pages.size()][];
+        for (KVPair<URI, ISet<URI>> pair : graph) {
+            int[] links = new int[pair.getValue().size()];
+            int i = 0;
+            for (URI link : pair.getValue()) {
+                links[i] = pages.getIdOrDefault(link);
+                i++;
+            }
+            outLinks[pages.getId(pair.getKey())] = links;
+        }
+        return new LinkGraph(pages, outLinks);
+    }
+
+    /**
+     * Returns the same graph with every link pointing the other way. Pages keep
+     * their ids, so the offsets and sources of the result describe the links
+     * leaving every page of this graph.
+     */
+    LinkGraph reverse() {
+        int pageCount = this.getPageCount();
+        int[] reverseOffsets = new int[pageCount + 1];
+        for (int page = 0; page < pageCount; page++) {
+            reverseOffsets[page + 1] = reverseOffsets[page] + this.outDegrees[page];
+        }
+        // Visiting the targets in increasing order keeps every list of targets sorted.
+        int[] targets = new int[this.sources.length];
+        int[] next = Arrays.copyOf(reverseOffsets, pageCount);
+        for (int target = 0; target < pageCount; target++) {
+            for (int j = this.offsets[target]; j < this.offsets[target + 1]; j++) {
+                targets[next[this.sources[j]]] = target;
+                next[this.sources[j]]++;
+            }
+        }
+        int[] inDegrees = new int[pageCount];
+        for (int page = 0; page < pageCount; page++) {
+            inDegrees[page] = this.getInDegree(page);
+        }
+        return new LinkGraph(this.pages, this.originalPages, this.order, reverseOffsets, targets, inDegrees);
+    }
+
+    /**
+     * Returns the same graph with the pages given new ids: page order[i] of this
+     * graph becomes page 'i'. 'order' must contain every page id exactly once.
+     */
+    LinkGraph permute(int[] order) {
+        int pageCount = this.getPageCount();
+        if (order.length != pageCount) {
+            throw new IllegalArgumentException("The order must contain every page exactly once");
+        }
+        int[] newIds = new int[pageCount];
+        Arrays.fill(newIds, -1);
+        for (int i = 0; i < pageCount; i++) {
+            if (newIds[order[i]] >= 0) {
+                throw new IllegalArgumentException("The order must contain every page exactly once");
+            }
+            newIds[order[i]] = i;
+        }
+
+        int[] newOffsets = new int[pageCount + 1];
+        int[] newOutDegrees = new int[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            newOffsets[i + 1] = newOffsets[i] + this.getInDegree(order[i]);
+            newOutDegrees[i] = this.outDegrees[order[i]];
+        }
+
+        // Visiting the sources in increasing order of their new ids keeps every list
+        // of sources sorted, so we go through the links leaving every page.
+        LinkGraph reverse = this.reverse();
+        int[] newSources = new int[this.sources.length];
+        int[] next = Arrays.copyOf(newOffsets, pageCount);
+        for (int i = 0; i < pageCount; i++) {
+            int page = order[i];
+            for (int j = reverse.offsets[page]; j < reverse.offsets[page + 1]; j++) {
+                int target = newIds[reverse.sources[j]];
+                newSources[next[target]] = i;
+                next[target]++;
+            }
+        }
+
+        int[] originalOrder = order.clone();
+        if (this.order != null) {
+            for (int i = 0; i < pageCount; i++) {
+                originalOrder[i] = this.order[order[i]];
+            }
+        }
+        IdRegistry<URI> originalPages = this.order != null ? this.originalPages : this.pages;
+        return new LinkGraph(null, originalPages, originalOrder, newOffsets, newSources, newOutDegrees);
+    }
+
+    /**
+     * Returns the registry assigning an id to every page of the graph.
+     *
+     * @throws IllegalStateException  if the pages of the graph are only known by id
+     */
+    public synchronized IdRegistry<URI> getPages() {
+        if (this.pages == null && this.originalPages == null) {
+            throw new IllegalStateException("The pages of this graph are only known by id");
+        }
+        if (this.pages == null) {
+            IdRegistry<URI> pages = new IdRegistry<>();
+            for (int page : this.order) {
+                pages.register(this.originalPages.getItem(page));
+            }
+            this.pages = pages;
+        }
+        return this.pages;
+    }
+
+    /**
+     * Returns the number of pages in the graph.
+     */
+    public int getPageCount() {
+        return this.outDegrees.length;
+    }
+
+    /**
+     * Returns the number of links in the graph.
+     */
+    public int getLinkCount() {
+        return this.sources.length;
+    }
+
+    /**
+     * Returns the number of links leaving the given page.
+     */
+    public int getOutDegree(int page) {
+        return this.outDegrees[page];
+    }
+
+    /**
+     * Returns the number of links pointing to the given page.
+     */
+    public int getInDegree(int page) {
+        return this.offsets[page + 1] - this.offsets[page];
+    }
+
+    /**
+     * Returns the offsets array described in the class comment. The array must not
+     * be modified.
+     */
+    int[] getOffsets() {
+        return this.offsets;
+    }
+
+    /**
+     * Returns the sources array described in the class comment. The array must not
+     * be modified.
+     */
+    int[] getSources() {
+        return this.sources;
+    }
+
+    /**
+     * Returns the number of links leaving every page, indexed by page id. The array
+     * must not be modified.
+     */
+    int[] getOutDegrees() {
+        return this.outDegrees;
+    }
+}
@@ -0,0 +1,70 @@
+package search.analyzers.pagerank;
+
+import java.util.Arrays;
+
+/**
+ * Computes page ranks by power iteration over a graph stored in an EdgeFile, for
+ * graphs too large to load into a LinkGraph.
+ *
+ * Every iteration reads through the file once, from start to end. The only things
+ * kept in memory are two arrays of ranks, so a graph of N pages needs 16 N bytes of
+ * heap, however many links it has. To get away with two arrays rather than three,
+ * the current ranks are turned into the shares every page hands to the pages it
+ * links to in place, and turned back whenever we need them.
+ *
+ * This computes exactly the same ranks as PowerIteration, modulo rounding.
+ */
+public class MappedPowerIteration {
+    /**
+     * Returns the page rank of every page of the given graph.
+     *
+     * Starting with a rank of 1 / N for every page, iterates until no rank moves by
+     * 'epsilon' or more in one iteration, or until 'limit' iterations have run.
+     */
+    public static PageRankResult solve(EdgeFile graph, double decay, double epsilon, int limit) {
+        int pageCount = graph.getPageCount();
+        double[] ranks = PageRankResult.makeInitialRanks(pageCount);
+        double[] newRanks = new double[pageCount];
+        double[] residuals = new double[16];
+
+        int iterations = 0;
+        while (iterations < limit) {
+            // Turn ranks[u] into the rank page 'u' hands to each of the pages it links to.
+            double danglingRank = 0.0;
+            EdgeFile.Cursor outDegrees = graph.readOutDegrees();
+            for (int page = 0; page < pageCount; page++) {
+                int outDegree = outDegrees.next();
+                if (outDegree == 0) {
+                    danglingRank += ranks[page];
+                } else {
+                    ranks[page] /= outDegree;
+                }
+            }
+
+            double base = (1.0 - decay) / pageCount + decay * danglingRank / pageCount;
+            double residual = 0.0;
+            outDegrees = graph.readOutDegrees();
+            EdgeFile.Cursor inDegrees = graph.readInDegrees();
+            EdgeFile.Cursor sources = graph.readSources();
+            for (int page = 0; page < pageCount; page++) {
+                double sum = 0.0;
+                for (int j = inDegrees.next(); j > 0; j--) {
+                    sum += ranks[sources.next()];
+                }
+                newRanks[page] = base + decay * sum;
+                double oldRank = ranks[page] * Math.max(outDegrees.next(), 1);
+                residual = Math.max(residual, Math.abs(newRanks[page] - oldRank));
+            }
+            residuals = PageRankResult.record(residuals, iterations, residual);
+            iterations++;
+
+            double[] temp = ranks;
+            ranks = newRanks;
+            newRanks = temp;
+            if (residual < epsilon) {
+                break;
+            }
+        }
+        return new PageRankResult(ranks, Arrays.copyOf(residuals, iterations));
+    }
+}
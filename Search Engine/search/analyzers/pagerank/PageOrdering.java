@@ -0,0 +1,31 @@
+package search.analyzers.pagerank;
+
+/**
+ * The ways GraphReordering can give the pages of a LinkGraph new ids, so that
+ * page rank reads the ranks of linked pages from nearby memory more often.
+ */
+public enum PageOrdering {
+    /**
+     * Keeps the ids the pages already have.
+     */
+    ORIGINAL,
+
+    /**
+     * Sorts the pages by the number of links leaving them, most first. Those are
+     * the pages whose rank is read the most, and they end up next to each other.
+     */
+    DEGREE,
+
+    /**
+     * Numbers the pages in breadth-first order, following links either way, so
+     * pages get ids close to those of the pages they link to or are linked from.
+     */
+    BREADTH_FIRST,
+
+    /**
+     * Reverse Cuthill-McKee: a breadth-first order that starts from a page with few
+     * links and visits the neighbors of every page by increasing number of links,
+     * reversed. This keeps the ids of linked pages even closer together.
+     */
+    REVERSE_CUTHILL_MCKEE
+}
@@ -0,0 +1,209 @@
+package search.analyzers.pagerank;
+
+import search.index.IdRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Saves page ranks to a file, along with a fingerprint of the graph they were
+ * computed for, so they can be reused as long as the graph does not change.
+ *
+ * The uri of every page is saved too, so that ranks computed for an older version
+ * of a graph can still be matched up with the pages of the new one, and used as a
+ * starting point (see ResidualPush).
+ *
+ * File layout (all numbers big-endian):
+ *
+ *     header   int magic, int version, long fingerprint, double decay,
+ *              double epsilon, int page count
+ *     pages    per page: the uri, as an int length followed by that many bytes
+ *              of UTF-8, then the double page rank
+ */
+public class PageRankCache {
+    static final int MAGIC = 0x50524b31; // "PRK1"
+    static final int VERSION = 1;
+
+    // Anything longer is not a uri but a corrupted file.
+    private static final int MAX_URI_LENGTH = 1 << 20;
+
+    /**
+     * Page ranks read back from a file.
+     */
+    public static class SavedRanks {
+        private final long fingerprint;
+        private final double decay;
+        private final double epsilon;
+        private final String[] uris;
+        private final double[] ranks;
+
+        private SavedRanks(long fingerprint, double decay, double epsilon, String[] uris, double[] ranks) {
+            this.fingerprint = fingerprint;
+            this.decay = decay;
+            this.epsilon = epsilon;
+            this.uris = uris;
+            this.ranks = ranks;
+        }
+
+        /**
+         * Returns the fingerprint of the graph the ranks were computed for.
+         */
+        public long getFingerprint() {
+            return this.fingerprint;
+        }
+
+        /**
+         * Returns the decay the ranks were computed with.
+         */
+        public double getDecay() {
+            return this.decay;
+        }
+
+        /**
+         * Returns the epsilon the ranks were computed with: they are at least that
+         * accurate.
+         */
+        public double getEpsilon() {
+            return this.epsilon;
+        }
+
+        /**
+         * Returns the ranks, indexed by the ids of the pages in the graph they were
+         * computed for. The array must not be modified.
+         */
+        public double[] getRanks() {
+            return this.ranks;
+        }
+
+        /**
+         * Returns a registry giving every page the id it had in the graph the ranks
+         * were computed for. That is the given registry if it has the same pages with
+         * the same ids (which is far faster than building a new one).
+         */
+        public IdRegistry<URI> makePages(IdRegistry<URI> candidate) {
+            if (candidate.size() == this.uris.length) {
+                int page = 0;
+                while (page < this.uris.length && candidate.getItem(page).toString().equals(this.uris[page])) {
+                    page++;
+                }
+                if (page == this.uris.length) {
+                    return candidate;
+                }
+            }
+            IdRegistry<URI> pages = new IdRegistry<>();
+            for (String uri : this.uris) {
+                pages.register(URI.create(uri));
+            }
+            return pages;
+        }
+    }
+
+    /**
+     * Returns a fingerprint of the given graph: a 64-bit hash of the uri of every
+     * page and of every link, in id order. Two graphs with the same fingerprint are
+     * the same graph, with the same ids, for all practical purposes.
+     */
+    public static long fingerprint(LinkGraph graph) {
+        int pageCount = graph.getPageCount();
+        int[] offsets = graph.getOffsets();
+        int[] sources = graph.getSources();
+        int[] outDegrees = graph.getOutDegrees();
+        IdRegistry<URI> pages = graph.getPages();
+
+        long hash = mix(0x5052414e4b4c4e4bL, pageCount);
+        for (int page = 0; page < pageCount; page++) {
+            String uri = pages.getItem(page).toString();
+            for (int i = 0; i < uri.length(); i++) {
+                hash = mix(hash, uri.charAt(i));
+            }
+            hash = mix(hash, outDegrees[page]);
+            hash = mix(hash, offsets[page + 1] - offsets[page]);
+            for (int j = offsets[page]; j < offsets[page + 1]; j++) {
+                hash = mix(hash, sources[j]);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Combines a hash with the next value (the finalizer of SplitMix64, applied to
+     * both xor-ed together).
+     */
+    private static long mix(long hash, long value) {
+        long z = (hash ^ value) * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Returns the page ranks saved in the given file, or null if there is no such
+     * file, or it does not hold page ranks this class can read.
+     */
+    public static SavedRanks read(Path path) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long fingerprint = in.readLong();
+            double decay = in.readDouble();
+            double epsilon = in.readDouble();
+            int pageCount = in.readInt();
+            if (pageCount < 0) {
+                return null;
+            }
+            String[] uris = new String[pageCount];
+            double[] ranks = new double[pageCount];
+            for (int page = 0; page < pageCount; page++) {
+                int length = in.readInt();
+                if (length < 0 || length > MAX_URI_LENGTH) {
+                    return null;
+                }
+                byte[] uri = new byte[length];
+                in.readFully(uri);
+                uris[page] = new String(uri, StandardCharsets.UTF_8);
+                ranks[page] = in.readDouble();
+            }
+            return new SavedRanks(fingerprint, decay, epsilon, uris, ranks);
+        } catch (IOException | RuntimeException ex) {
+            // A missing, truncated or corrupted file just means computing the ranks
+            // from scratch.
+            return null;
+        }
+    }
+
+    /**
+     * Saves the given page ranks of the pages of the given graph, whose fingerprint
+     * is given, to the given file, replacing it if it already exists. Like
+     * SegmentWriter, this writes to a temporary file first.
+     */
+    public static void write(Path path, LinkGraph graph, long fingerprint, double decay, double epsilon,
+                             double[] ranks) throws IOException {
+        IdRegistry<URI> pages = graph.getPages();
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint);
+            out.writeDouble(decay);
+            out.writeDouble(epsilon);
+            out.writeInt(graph.getPageCount());
+            for (int page = 0; page < graph.getPageCount(); page++) {
+                byte[] uri = pages.getItem(page).toString().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(uri.length);
+                out.write(uri);
+                out.writeDouble(ranks[page]);
+            }
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
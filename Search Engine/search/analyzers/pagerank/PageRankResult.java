@@ -0,0 +1,72 @@
+package search.analyzers.pagerank;
+
+import java.util.Arrays;
+
+/**
+ * The page ranks computed by a solver, along with how it got there.
+ */
+public class PageRankResult {
+    private final double[] ranks;
+    private final double[] residuals;
+
+    /**
+     * Creates a result holding the given ranks (indexed by page id) and the residual
+     * of every iteration that produced them.
+     */
+    public PageRankResult(double[] ranks, double[] residuals) {
+        this.ranks = ranks;
+        this.residuals = residuals;
+    }
+
+    /**
+     * Returns the page rank of every page, indexed by page id. The returned array
+     * must not be modified.
+     */
+    public double[] getRanks() {
+        return this.ranks;
+    }
+
+    /**
+     * Returns the number of iterations the solver ran.
+     */
+    public int getIterationCount() {
+        return this.residuals.length;
+    }
+
+    /**
+     * Returns the residual of the given iteration: by how much the rank that moved
+     * the most during that iteration changed.
+     */
+    public double getResidual(int iteration) {
+        return this.residuals[iteration];
+    }
+
+    /**
+     * Returns the residual of every iteration. The array must not be modified.
+     */
+    double[] getResiduals() {
+        return this.residuals;
+    }
+
+    /**
+     * Returns an array giving every page the same rank of 1 / N, which every solver
+     * starts from.
+     */
+    static double[] makeInitialRanks(int pageCount) {
+        double[] ranks = new double[pageCount];
+        Arrays.fill(ranks, 1.0 / pageCount);
+        return ranks;
+    }
+
+    /**
+     * Stores the residual of the given iteration, growing the array if needed, and
+     * returns the array.
+     */
+    static double[] record(double[] residuals, int iteration, double residual) {
+        if (iteration == residuals.length) {
+            residuals = Arrays.copyOf(residuals, iteration * 2);
+        }
+        residuals[iteration] = residual;
+        return residuals;
+    }
+}
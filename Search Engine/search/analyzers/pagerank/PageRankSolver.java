@@ -0,0 +1,53 @@
+package search.analyzers.pagerank;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The algorithms a PageRankAnalyzer can use to compute page ranks. They all
+ * converge to the same ranks, modulo epsilon.
+ */
+public enum PageRankSolver {
+    /**
+     * Plain power iteration (see PowerIteration). The only solver that can use
+     * more than one thread.
+     */
+    POWER_ITERATION,
+
+    /**
+     * Updates ranks in place (see GaussSeidel), usually converging in far fewer
+     * iterations.
+     */
+    GAUSS_SEIDEL,
+
+    /**
+     * Power iteration that stops recomputing pages once they have converged (see
+     * AdaptivePowerIteration).
+     */
+    ADAPTIVE,
+
+    /**
+     * Power iteration, periodically sped up by quadratic extrapolation (see
+     * QuadraticExtrapolation).
+     */
+    QUADRATIC_EXTRAPOLATION;
+
+    /**
+     * Returns the page rank of every page of the given graph, computed with this
+     * solver (see the solve() method of each of them). Solvers that support it use
+     * the threads of the given pool; if the pool is null, everything runs on the
+     * calling thread.
+     */
+    public PageRankResult solve(LinkGraph graph, double decay, double epsilon, int limit, ForkJoinPool pool) {
+        if (this == GAUSS_SEIDEL) {
+            return GaussSeidel.solve(graph, decay, epsilon, limit);
+        } else if (this == ADAPTIVE) {
+            return AdaptivePowerIteration.solve(graph, decay, epsilon, limit);
+        } else if (this == QUADRATIC_EXTRAPOLATION) {
+            return QuadraticExtrapolation.solve(graph, decay, epsilon, limit);
+        } else if (pool != null) {
+            return PowerIteration.solve(graph, decay, epsilon, limit, pool);
+        } else {
+            return PowerIteration.solve(graph, decay, epsilon, limit);
+        }
+    }
+}
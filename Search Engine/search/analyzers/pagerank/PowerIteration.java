@@ -0,0 +1,162 @@
+package search.analyzers.pagerank;
+
+import search.misc.ParallelLoop;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Computes page ranks by power iteration over a LinkGraph.
+ *
+ * Every iteration, each page hands 'decay' times its rank out evenly to the pages
+ * it links to, and every page is then given an extra (1 - decay) / N. Pages without
+ * any links (dangling pages) hand their rank out evenly to every page instead.
+ *
+ * Rather than having each dangling page touch every other page, we add up the rank
+ * of all the dangling pages first, and give every page its share in the same pass
+ * that pulls rank along the links.
+ *
+ * Since every page only writes its own new rank, pages can be handled in parallel
+ * without any locking; see the overload taking a ForkJoinPool.
+ */
+public class PowerIteration {
+    // The number of pages handed to a thread at a time.
+    private static final int CHUNK_SIZE = 4096;
+
+    /**
+     * Returns the page rank of every page of the given graph.
+     *
+     * Starting with a rank of 1 / N for every page, iterates until no rank moves by
+     * 'epsilon' or more in one iteration, or until 'limit' iterations have run.
+     */
+    public static PageRankResult solve(LinkGraph graph, double decay, double epsilon, int limit) {
+        int pageCount = graph.getPageCount();
+        double[] ranks = PageRankResult.makeInitialRanks(pageCount);
+        double[] newRanks = new double[pageCount];
+        double[] shares = new double[pageCount];
+        double[] residuals = new double[16];
+
+        int iterations = 0;
+        while (iterations < limit) {
+            double residual = iterate(graph, decay, ranks, shares, newRanks);
+            residuals = PageRankResult.record(residuals, iterations, residual);
+            iterations++;
+
+            double[] temp = ranks;
+            ranks = newRanks;
+            newRanks = temp;
+            if (residual < epsilon) {
+                break;
+            }
+        }
+        return new PageRankResult(ranks, Arrays.copyOf(residuals, iterations));
+    }
+
+    /**
+     * Does a single iteration, reading the current ranks from 'ranks' and writing
+     * the new ones to 'newRanks'. Returns by how much the rank that moved the most
+     * has changed. 'shares' is scratch space, with one entry per page.
+     */
+    static double iterate(LinkGraph graph, double decay, double[] ranks, double[] shares, double[] newRanks) {
+        int pageCount = graph.getPageCount();
+        int[] offsets = graph.getOffsets();
+        int[] sources = graph.getSources();
+        int[] outDegrees = graph.getOutDegrees();
+
+        // shares[u] is the rank page 'u' hands to each of the pages it links to.
+        double danglingRank = 0.0;
+        for (int page = 0; page < pageCount; page++) {
+            if (outDegrees[page] == 0) {
+                danglingRank += ranks[page];
+            } else {
+                shares[page] = ranks[page] / outDegrees[page];
+            }
+        }
+
+        double base = (1.0 - decay) / pageCount + decay * danglingRank / pageCount;
+        double residual = 0.0;
+        for (int page = 0; page < pageCount; page++) {
+            double sum = 0.0;
+            for (int j = offsets[page]; j < offsets[page + 1]; j++) {
+                sum += shares[sources[j]];
+            }
+            newRanks[page] = base + decay * sum;
+            residual = Math.max(residual, Math.abs(newRanks[page] - ranks[page]));
+        }
+        return residual;
+    }
+
+    /**
+     * Same as above, but splits the pages between the threads of the given pool.
+     *
+     * Sums over all pages (of the dangling rank, and of how much ranks still move)
+     * are computed per chunk of pages and then combined in chunk order, so the result
+     * does not depend on the number of threads. It may differ from the single-threaded
+     * version by rounding.
+     */
+    public static PageRankResult solve(LinkGraph graph, double decay, double epsilon, int limit,
+                                       ForkJoinPool pool) {
+        int pageCount = graph.getPageCount();
+        int[] offsets = graph.getOffsets();
+        int[] sources = graph.getSources();
+        int[] outDegrees = graph.getOutDegrees();
+
+        double[] ranks = PageRankResult.makeInitialRanks(pageCount);
+        double[] newRanks = new double[pageCount];
+        double[] shares = new double[pageCount];
+        double[] residuals = new double[16];
+
+        int chunkCount = ParallelLoop.countChunks(pageCount, CHUNK_SIZE);
+        double[] partialDanglingRanks = new double[chunkCount];
+        double[] partialResiduals = new double[chunkCount];
+
+        int iterations = 0;
+        while (iterations < limit) {
+            double[] oldRanks = ranks;
+            double[] nextRanks = newRanks;
+
+            ParallelLoop.forEachChunk(pool, pageCount, CHUNK_SIZE, (chunk, start, end) -> {
+                double danglingRank = 0.0;
+                for (int page = start; page < end; page++) {
+                    if (outDegrees[page] == 0) {
+                        danglingRank += oldRanks[page];
+                    } else {
+                        shares[page] = oldRanks[page] / outDegrees[page];
+                    }
+                }
+                partialDanglingRanks[chunk] = danglingRank;
+            });
+            double danglingRank = 0.0;
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                danglingRank += partialDanglingRanks[chunk];
+            }
+
+            double base = (1.0 - decay) / pageCount + decay * danglingRank / pageCount;
+            ParallelLoop.forEachChunk(pool, pageCount, CHUNK_SIZE, (chunk, start, end) -> {
+                double residual = 0.0;
+                for (int page = start; page < end; page++) {
+                    double sum = 0.0;
+                    for (int j = offsets[page]; j < offsets[page + 1]; j++) {
+                        sum += shares[sources[j]];
+                    }
+                    nextRanks[page] = base + decay * sum;
+                    residual = Math.max(residual, Math.abs(nextRanks[page] - oldRanks[page]));
+                }
+                partialResiduals[chunk] = residual;
+            });
+            double residual = 0.0;
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                residual = Math.max(residual, partialResiduals[chunk]);
+            }
+            residuals = PageRankResult.record(residuals, iterations, residual);
+            iterations++;
+
+            ranks = nextRanks;
+            newRanks = oldRanks;
+            if (residual < epsilon) {
+                break;
+            }
+        }
+        return new PageRankResult(ranks, Arrays.copyOf(residuals, iterations));
+    }
+}
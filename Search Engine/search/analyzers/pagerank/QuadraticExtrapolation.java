@@ -0,0 +1,110 @@
+package search.analyzers.pagerank;
+
+import java.util.Arrays;
+
+/**
+ * Computes page ranks by power iteration over a LinkGraph, periodically jumping
+ * ahead with quadratic extrapolation (Kamvar, Haveliwala, Manning and Golub,
+ * "Extrapolation Methods for Accelerating PageRank Computations").
+ *
+ * Power iteration converges slowly because the error shrinks by a factor of only
+ * about 'decay' per iteration. Quadratic extrapolation assumes the current ranks
+ * are a mix of the true ranks and the two slowest decaying error terms, estimates
+ * those terms from the last four iterations, and subtracts them out.
+ */
+public class QuadraticExtrapolation {
+    // The number of plain iterations run between two extrapolations.
+    private static final int PERIOD = 10;
+
+    /**
+     * Returns the page rank of every page of the given graph.
+     *
+     * Starting with a rank of 1 / N for every page, iterates until no rank moves by
+     * 'epsilon' or more in one iteration, or until 'limit' iterations have run.
+     * Extrapolating does not count as an iteration.
+     */
+    public static PageRankResult solve(LinkGraph graph, double decay, double epsilon, int limit) {
+        int pageCount = graph.getPageCount();
+        double[] shares = new double[pageCount];
+        double[] residuals = new double[16];
+
+        // The last four iterations, oldest first: history[3] holds the current ranks.
+        double[][] history = new double[4][];
+        history[3] = PageRankResult.makeInitialRanks(pageCount);
+        double[] spare = new double[pageCount];
+        int sinceExtrapolation = 0;
+
+        int iterations = 0;
+        while (iterations < limit) {
+            double residual = PowerIteration.iterate(graph, decay, history[3], shares, spare);
+            residuals = PageRankResult.record(residuals, iterations, residual);
+            iterations++;
+
+            // Shift the history along, recycling the oldest array.
+            double[] oldest = history[0];
+            System.arraycopy(history, 1, history, 0, 3);
+            history[3] = spare;
+            spare = oldest != null ? oldest : new double[pageCount];
+            sinceExtrapolation++;
+
+            if (residual < epsilon) {
+                break;
+            }
+            if (sinceExtrapolation >= PERIOD) {
+                extrapolate(history);
+                sinceExtrapolation = 0;
+            }
+        }
+        return new PageRankResult(history[3], Arrays.copyOf(residuals, iterations));
+    }
+
+    /**
+     * Replaces history[3] with the quadratic extrapolation of the four iterations
+     * in 'history', unless the last iterations are too close to each other to
+     * estimate anything from.
+     */
+    private static void extrapolate(double[][] history) {
+        double[] x0 = history[0];
+        double[] x1 = history[1];
+        double[] x2 = history[2];
+        double[] x3 = history[3];
+
+        // With y_i = x_i - x_0, find the gammas minimizing |gamma1 y_1 + gamma2 y_2 + y_3|
+        // by solving the 2x2 normal equations.
+        double a11 = 0.0;
+        double a12 = 0.0;
+        double a22 = 0.0;
+        double b1 = 0.0;
+        double b2 = 0.0;
+        for (int page = 0; page < x0.length; page++) {
+            double y1 = x1[page] - x0[page];
+            double y2 = x2[page] - x0[page];
+            double y3 = x3[page] - x0[page];
+            a11 += y1 * y1;
+            a12 += y1 * y2;
+            a22 += y2 * y2;
+            b1 -= y1 * y3;
+            b2 -= y2 * y3;
+        }
+        double determinant = a11 * a22 - a12 * a12;
+        if (!(Math.abs(determinant) > 1e-300)) {
+            return;
+        }
+        double gamma1 = (b1 * a22 - b2 * a12) / determinant;
+        double gamma2 = (a11 * b2 - a12 * b1) / determinant;
+        double gamma3 = 1.0;
+
+        double beta0 = gamma1 + gamma2 + gamma3;
+        double beta1 = gamma2 + gamma3;
+        double beta2 = gamma3;
+        double sum = 0.0;
+        for (int page = 0; page < x0.length; page++) {
+            x3[page] = beta0 * x1[page] + beta1 * x2[page] + beta2 * x3[page];
+            sum += x3[page];
+        }
+        // Ranks always add up to 1; make sure the extrapolated ones do too.
+        for (int page = 0; page < x0.length; page++) {
+            x3[page] /= sum;
+        }
+    }
+}
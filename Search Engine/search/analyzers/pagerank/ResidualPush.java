@@ -0,0 +1,158 @@
+package search.analyzers.pagerank;
+
+import search.index.IdRegistry;
+
+import java.net.URI;
+import java.util.Arrays;
+
+/**
+ * Updates page ranks computed for an earlier version of a LinkGraph, after some
+ * pages or links were added or removed, by pushing residuals (see Andersen, Chung
+ * and Lang, "Local Graph Partitioning using PageRank Vectors").
+ *
+ * Rather than the page ranks themselves, this works with ranks that are not
+ * scaled to add up to 1, where every page starts with (1 - decay) and dangling
+ * pages simply lose the rank they would hand out. With the same rank handed out
+ * to every page as in PowerIteration, those ranks turn out to be proportional to
+ * the real page ranks, so we only need to scale them back at the end. But a page
+ * no longer depends on the rank of every dangling page, so a change only affects
+ * the pages close to it.
+ *
+ * The residual of a page is how much its rank would move if it pulled rank along
+ * its links right now. We start from the old ranks and find every page whose
+ * residual is 'epsilon' or more, which is only the case near the pages and links
+ * that changed. Such a page absorbs its residual and pushes it on along its
+ * links, which may in turn push the residual of the pages it links to over the
+ * threshold. Everything else is left alone.
+ */
+public class ResidualPush {
+    /**
+     * Returns the page rank of every page of the given graph, starting from the
+     * page ranks previously computed for 'oldPages' (indexed by their id in that
+     * registry). Pages are matched by uri; pages that are new to the graph start
+     * out with a rank of 0.
+     *
+     * Pushes residuals until no rank would move by 'epsilon' or more in an
+     * iteration, or until 'limit' rounds have run. A round pushes the residual of
+     * every page that was over the threshold when it started, and counts as an
+     * iteration in the result; the residual of a round is the largest residual it
+     * pushed.
+     */
+    public static PageRankResult update(LinkGraph graph, IdRegistry<URI> oldPages, double[] oldRanks,
+                                        double decay, double epsilon, int limit) {
+        int pageCount = graph.getPageCount();
+        int[] offsets = graph.getOffsets();
+        int[] sources = graph.getSources();
+        int[] outDegrees = graph.getOutDegrees();
+
+        // Start from the old page ranks, summing up those of dangling pages. Registries
+        // only ever grow, so if the graph uses the old one, pages kept their ids.
+        IdRegistry<URI> pages = graph.getPages();
+        double[] ranks = new double[pageCount];
+        double totalRank = 0.0;
+        double danglingRank = 0.0;
+        for (int page = 0; page < pageCount; page++) {
+            int oldPage;
+            if (pages == oldPages) {
+                oldPage = page < oldRanks.length ? page : -1;
+            } else {
+                oldPage = oldPages.getIdOrDefault(pages.getItem(page));
+            }
+            if (oldPage >= 0) {
+                ranks[page] = oldRanks[oldPage];
+                totalRank += ranks[page];
+                if (outDegrees[page] == 0) {
+                    danglingRank += ranks[page];
+                }
+            }
+        }
+
+        // Page ranks p solve p = (1 - decay) / N + decay * (dangling rank) / N + decay * (rank
+        // pulled along links), so K * p with K = (1 - decay) N / ((1 - decay) + decay * (dangling
+        // rank)) solves our unscaled equation. Where nothing changed, the old ranks scaled by
+        // K leave no residual.
+        double scale = pageCount == 0 ? 0.0 : (1.0 - decay) * pageCount
+                / ((1.0 - decay) * totalRank + decay * danglingRank);
+        double[] shares = new double[pageCount];
+        for (int page = 0; page < pageCount; page++) {
+            ranks[page] *= scale;
+            if (outDegrees[page] > 0) {
+                shares[page] = ranks[page] / outDegrees[page];
+            }
+        }
+        double[] residuals = new double[pageCount];
+        double sum = 0.0;
+        for (int page = 0; page < pageCount; page++) {
+            double pulled = 0.0;
+            for (int j = offsets[page]; j < offsets[page + 1]; j++) {
+                pulled += shares[sources[j]];
+            }
+            residuals[page] = (1.0 - decay) + decay * pulled - ranks[page];
+            sum += ranks[page];
+        }
+
+        // Pushing needs the links leaving every page, which the graph does not store.
+        LinkGraph reverse = graph.reverse();
+        int[] targetOffsets = reverse.getOffsets();
+        int[] targets = reverse.getSources();
+
+        // The pages to push from are queue[head] up to queue[tail - 1] (wrapping around).
+        // A page is never in the queue twice, so it can hold every page.
+        int[] queue = new int[Math.max(pageCount, 1)];
+        boolean[] queued = new boolean[pageCount];
+        int head = 0;
+        int tail = 0;
+        int queuedCount = 0;
+        double threshold = epsilon * sum;
+        for (int page = 0; page < pageCount; page++) {
+            if (Math.abs(residuals[page]) >= threshold) {
+                queue[tail] = page;
+                tail = (tail + 1) % queue.length;
+                queued[page] = true;
+                queuedCount++;
+            }
+        }
+
+        double[] roundResiduals = new double[16];
+        int rounds = 0;
+        while (queuedCount > 0 && rounds < limit) {
+            int roundSize = queuedCount;
+            double roundResidual = 0.0;
+            for (int i = 0; i < roundSize; i++) {
+                int page = queue[head];
+                head = (head + 1) % queue.length;
+                queued[page] = false;
+                queuedCount--;
+
+                double residual = residuals[page];
+                residuals[page] = 0.0;
+                ranks[page] += residual;
+                sum += residual;
+                roundResidual = Math.max(roundResidual, Math.abs(residual));
+
+                if (outDegrees[page] == 0) {
+                    continue;
+                }
+                double share = decay * residual / outDegrees[page];
+                threshold = epsilon * sum;
+                for (int j = targetOffsets[page]; j < targetOffsets[page + 1]; j++) {
+                    int target = targets[j];
+                    residuals[target] += share;
+                    if (!queued[target] && Math.abs(residuals[target]) >= threshold) {
+                        queue[tail] = target;
+                        tail = (tail + 1) % queue.length;
+                        queued[target] = true;
+                        queuedCount++;
+                    }
+                }
+            }
+            roundResiduals = PageRankResult.record(roundResiduals, rounds, roundResidual / sum);
+            rounds++;
+        }
+
+        for (int page = 0; page < pageCount; page++) {
+            ranks[page] /= sum;
+        }
+        return new PageRankResult(ranks, Arrays.copyOf(roundResiduals, rounds));
+    }
+}
@@ -0,0 +1,226 @@
+package search.benchmarks;
+
+import datastructures.concrete.ChainedHashSet;
+import datastructures.concrete.DoubleLinkedList;
+import datastructures.interfaces.IList;
+import datastructures.interfaces.ISet;
+import search.Main;
+import search.QueryCoalescer;
+import search.SearchEngine;
+import search.SearchOptions;
+import search.index.LiveSegment;
+import search.index.RetrievalMode;
+import search.models.Result;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that a SearchEngine answers queries from many threads at once exactly as
+ * it does from a single one, through the whole serving path: snapshots of the live
+ * index, shards searched on the engine's pool, the per-thread scratch space of the
+ * retrievers, and a QueryCoalescer in front of it all, as in Webapp.
+ *
+ * This first answers a fixed set of queries (made of words from the index) one
+ * at a time, once per combination of retrieval mode and parallelism (see
+ * SearchOptions). Then many threads answer them again at once, all starting
+ * together, several times over, each query with one of those combinations. Half the threads go through
+ * a coalescer, in pairs sharing the same order of queries so that identical
+ * queries really do run at the same time; the others call the engine directly,
+ * each in its own order.
+ *
+ * Searching is deterministic, so results must be exactly those the same query got
+ * with the same options on its own: the same pages in the same order, with the
+ * same scores down to the last bit. (Results with different options may differ
+ * in the last bits of their scores, since MaxScore adds up the words of a query
+ * in an order that depends on the documents seen so far.) Any difference is
+ * printed, and the check exits with status 1; so does any exception thrown by a
+ * concurrent query.
+ *
+ * Usage: ConcurrentQueryCheck [data folder name] [number of threads] [number of queries]
+ *                             [rounds per thread]
+ */
+public class ConcurrentQueryCheck {
+    private static final int[] PARALLELISMS = {1, 2, 4};
+    private static final int MAX_K = 20;
+    private static final int MAX_PRINTED_MISMATCHES = 10;
+
+    private static int printedMismatches = 0;
+
+    public static void main(String[] args) throws Exception {
+        String dataFolderName = args.length > 0 ? args[0] : Main.DATA_FOLDER_NAME;
+        int threadCount = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int queryCount = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+
+        SearchEngine engine = new SearchEngine(dataFolderName);
+        QueryCoalescer coalescer = new QueryCoalescer(engine);
+
+        // Every query has a few words of the index (and sometimes one that is in
+        // no page at all). Squaring skews the term ids towards the first words seen,
+        // which tend to be the common ones. No two queries ask for the same words and
+        // k, so the coalescer only ever merges copies of the same query.
+        Random random = new Random(42);
+        LiveSegment segment = engine.getIndex().snapshot().getSegment(0);
+        IList<IList<String>> queryList = new DoubleLinkedList<>();
+        ISet<String> seen = new ChainedHashSet<>();
+        int[] ks = new int[queryCount];
+        while (queryList.size() < queryCount) {
+            IList<String> query = new DoubleLinkedList<>();
+            int length = 1 + random.nextInt(4);
+            for (int i = 0; i < length; i++) {
+                query.add(random.nextInt(20) == 0
+                        ? "missing" + random.nextInt(100)
+                        : segment.getTerm((int) (Math.pow(random.nextDouble(), 2) * segment.getTermCount())));
+            }
+            int k = 1 + random.nextInt(MAX_K);
+            String key = k + " " + String.join(" ", query);
+            if (!seen.contains(key)) {
+                seen.add(key);
+                ks[queryList.size()] = k;
+                queryList.add(query);
+            }
+        }
+        IList<String>[] queries = toArray(queryList);
+
+        RetrievalMode[] modes = RetrievalMode.values();
+        SearchOptions[] configurations = new SearchOptions[modes.length * PARALLELISMS.length];
+        for (int m = 0; m < modes.length; m++) {
+            for (int p = 0; p < PARALLELISMS.length; p++) {
+                configurations[m * PARALLELISMS.length + p] =
+                        SearchOptions.DEFAULT.withMode(modes[m]).withParallelism(PARALLELISMS[p]);
+            }
+        }
+
+        long start = System.nanoTime();
+        IList<Result>[][] expected = makeArrayOfResults(configurations.length, queryCount);
+        for (int c = 0; c < configurations.length; c++) {
+            for (int q = 0; q < queryCount; q++) {
+                expected[c][q] = engine.search(queries[q], ks[q], configurations[c]).getResults();
+            }
+        }
+        System.out.println(String.format("%d queries x %d configurations: one at a time in %.0f ms",
+                queryCount, configurations.length, (System.nanoTime() - start) / 1e6));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch startSignal = new CountDownLatch(1);
+        IList<Future<Integer>> mismatchCounts = new DoubleLinkedList<>();
+        for (int thread = 0; thread < threadCount; thread++) {
+            int index = thread;
+            boolean useCoalescer = thread % 2 == 0;
+            // Coalescing threads come in pairs with the same order.
+            long seed = useCoalescer ? thread / 2 : 1000 + thread;
+            mismatchCounts.add(executor.submit(() -> {
+                int[] order = shuffledOrder(queryCount, new Random(seed));
+                startSignal.await();
+                int mismatches = 0;
+                for (int round = 0; round < rounds; round++) {
+                    for (int q : order) {
+                        // Coalesced copies of a query must share their options, since the
+                        // waiters get the results of the first thread.
+                        int c = useCoalescer
+                                ? q % configurations.length
+                                : (q + round + index) % configurations.length;
+                        SearchOptions options = configurations[c];
+                        IList<Result> actual = useCoalescer
+                                ? coalescer.search(queries[q], ks[q], options).getResults()
+                                : engine.search(queries[q], ks[q], options).getResults();
+                        mismatches += compare(queries[q], options, expected[c][q], actual);
+                    }
+                }
+                return mismatches;
+            }));
+        }
+        start = System.nanoTime();
+        startSignal.countDown();
+        int mismatches = 0;
+        int failedThreads = 0;
+        for (Future<Integer> count : mismatchCounts) {
+            try {
+                mismatches += count.get();
+            } catch (ExecutionException ex) {
+                failedThreads++;
+                System.err.println("A query thread failed:");
+                ex.getCause().printStackTrace();
+            }
+        }
+        executor.shutdownNow();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        System.out.println(String.format("%d threads x %d rounds: %d mismatches, %d failed threads in %.0f ms",
+                threadCount, rounds, mismatches, failedThreads, (System.nanoTime() - start) / 1e6));
+        System.out.println("Coalescer: " + coalescer);
+
+        if (mismatches > 0 || failedThreads > 0) {
+            System.err.println("FAILED: concurrent queries returned different results than sequential ones");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Returns 1 if the given results differ from the expected ones (printing how,
+     * for the first few), and 0 otherwise.
+     */
+    private static int compare(IList<String> query, SearchOptions options, IList<Result> expected,
+                               IList<Result> actual) {
+        String difference = null;
+        if (expected.size() != actual.size()) {
+            difference = "expected " + expected.size() + " results, got " + actual.size();
+        }
+        for (int i = 0; i < expected.size() && difference == null; i++) {
+            Result expectedResult = expected.get(i);
+            Result actualResult = actual.get(i);
+            if (Double.compare(expectedResult.getScore(), actualResult.getScore()) != 0
+                    || !expectedResult.getUri().equals(actualResult.getUri())) {
+                difference = String.format("result %d: expected %s (%s), got %s (%s)", i,
+                        expectedResult.getUri(), expectedResult.getScore(),
+                        actualResult.getUri(), actualResult.getScore());
+            }
+        }
+        if (difference == null) {
+            return 0;
+        }
+        synchronized (ConcurrentQueryCheck.class) {
+            printedMismatches++;
+            if (printedMismatches <= MAX_PRINTED_MISMATCHES) {
+                System.err.println(String.format("mismatch for query '%s' (%s, parallelism %d): %s",
+                        String.join(" ", query), options.getMode(), options.getParallelism(), difference));
+            }
+        }
+        return 1;
+    }
+
+    private static int[] shuffledOrder(int size, Random random) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        return order;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static IList<String>[] toArray(IList<IList<String>> queries) {
+        IList<String>[] output = (IList<String>[]) new IList<?>[queries.size()];
+        int i = 0;
+        for (IList<String> query : queries) {
+            output[i] = query;
+            i++;
+        }
+        return output;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static IList<Result>[][] makeArrayOfResults(int rows, int columns) {
+        return (IList<Result>[][]) new IList<?>[rows][columns];
+    }
+}
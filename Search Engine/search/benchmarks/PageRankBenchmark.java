@@ -0,0 +1,69 @@
+package search.benchmarks;
+
+import search.analyzers.pagerank.LinkGraph;
+import search.analyzers.pagerank.PowerIteration;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures how page rank scales with the number of threads, on a synthetic graph
+ * whose in-degrees follow a power law (a few pages are linked to from everywhere,
+ * most pages from almost nowhere), like the web (see SyntheticGraphs).
+ *
+ * Every run does a fixed number of iterations, so the timings are comparable.
+ *
+ * Usage: PageRankBenchmark [number of pages] [average number of links per page] [iterations]
+ *                          [maximum number of threads]
+ */
+public class PageRankBenchmark {
+    private static final double DECAY = 0.85;
+    private static final double DANGLING_FRACTION = 0.1;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        int pageCount = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int averageDegree = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        long start = System.nanoTime();
+        LinkGraph graph = SyntheticGraphs.makeLinkGraph(pageCount, averageDegree, DANGLING_FRACTION,
+                new Random(42));
+        System.out.println(String.format("%d pages, %d links (generated in %.1f sec)",
+                graph.getPageCount(), graph.getLinkCount(), (System.nanoTime() - start) / 1e9));
+
+        double[] expected = null;
+        double sequential = Double.POSITIVE_INFINITY;
+        for (int round = 0; round < ROUNDS; round++) {
+            start = System.nanoTime();
+            expected = PowerIteration.solve(graph, DECAY, 0.0, iterations).getRanks();
+            sequential = Math.min(sequential, (System.nanoTime() - start) / 1e6);
+        }
+        System.out.println(String.format("sequential: %.1f ms/iteration", sequential / iterations));
+
+        int maxThreads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= maxThreads; threads = nextThreadCount(threads, maxThreads)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            double best = Double.POSITIVE_INFINITY;
+            double[] ranks = null;
+            for (int round = 0; round < ROUNDS; round++) {
+                start = System.nanoTime();
+                ranks = PowerIteration.solve(graph, DECAY, 0.0, iterations, pool).getRanks();
+                best = Math.min(best, (System.nanoTime() - start) / 1e6);
+            }
+            pool.shutdown();
+
+            double maxDifference = 0.0;
+            for (int page = 0; page < ranks.length; page++) {
+                maxDifference = Math.max(maxDifference, Math.abs(ranks[page] - expected[page]));
+            }
+            System.out.println(String.format(
+                    "%2d threads: %.1f ms/iteration, %.2fx sequential (max difference %.1e)",
+                    threads, best / iterations, sequential / best, maxDifference));
+        }
+    }
+
+    private static int nextThreadCount(int threads, int maxThreads) {
+        return threads < maxThreads && threads * 2 > maxThreads ? maxThreads : threads * 2;
+    }
+}
@@ -0,0 +1,174 @@
+package search.benchmarks;
+
+import search.analyzers.pagerank.LinkGraph;
+import search.analyzers.pagerank.PageRankResult;
+import search.analyzers.pagerank.PageRankSolver;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures what page rank costs on synthetic graphs of increasing size (see
+ * SyntheticGraphs), so that changes to the ranking code can be compared with
+ * numbers rather than by timing a whole indexing run. For every size, this times:
+ *
+ *  - building the LinkGraph from the lists of links leaving every page,
+ *  - one iteration of every solver (PageRankSolver), averaged over a fixed
+ *    number of iterations, plus power iteration on every thread of the machine,
+ *  - every solver, run until it converges, along with the number of iterations
+ *    it took and how far its ranks are from those of power iteration.
+ *
+ * Every measurement is repeated: the first rounds only warm up the JIT compiler,
+ * the others are reported as their mean and standard deviation. The last column
+ * of the iteration and convergence lines is a checksum of the ranks, which keeps
+ * the work from being optimized away and should not change between runs.
+ *
+ * Usage: PageRankSuite [comma-separated numbers of pages] [average number of links per page]
+ *                      [fraction of dangling pages] [epsilon] [measured rounds]
+ */
+public class PageRankSuite {
+    private static final double DECAY = 0.85;
+    private static final int ITERATIONS = 10;
+    private static final int LIMIT = 10000;
+    private static final int WARMUP_ROUNDS = 2;
+
+    public static void main(String[] args) {
+        String[] sizes = (args.length > 0 ? args[0] : "10000,100000,1000000").split(",");
+        int averageDegree = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        double danglingFraction = args.length > 2 ? Double.parseDouble(args[2]) : 0.1;
+        double epsilon = args.length > 3 ? Double.parseDouble(args[3]) : 1e-8;
+        int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+
+        for (String size : sizes) {
+            int pageCount = Integer.parseInt(size.trim());
+            long start = System.nanoTime();
+            int[][] outLinks = SyntheticGraphs.makeOutLinks(pageCount, averageDegree, danglingFraction,
+                    new Random(42));
+            double generateTime = (System.nanoTime() - start) / 1e6;
+
+            Timings construction = new Timings(rounds);
+            LinkGraph graph = null;
+            for (int round = 0; round < WARMUP_ROUNDS + rounds; round++) {
+                start = System.nanoTime();
+                graph = new LinkGraph(pageCount, outLinks);
+                construction.add(round, start);
+            }
+            outLinks = null;
+            System.out.println(String.format("%d pages, %d links (generated in %.0f ms)",
+                    graph.getPageCount(), graph.getLinkCount(), generateTime));
+            System.out.println(String.format("  %-40s %s", "graph construction", construction));
+
+            for (PageRankSolver solver : PageRankSolver.values()) {
+                measureIterations(solver.toString(), graph, solver, null, rounds);
+            }
+            measureIterations(PageRankSolver.POWER_ITERATION + " (" + pool.getParallelism() + " threads)",
+                    graph, PageRankSolver.POWER_ITERATION, pool, rounds);
+
+            double[] expected = PageRankSolver.POWER_ITERATION.solve(graph, DECAY, epsilon, LIMIT, null)
+                    .getRanks();
+            for (PageRankSolver solver : PageRankSolver.values()) {
+                measureConvergence(graph, solver, epsilon, rounds, expected);
+            }
+        }
+    }
+
+    /**
+     * Prints the time a single iteration of the given solver takes.
+     */
+    private static void measureIterations(String name, LinkGraph graph, PageRankSolver solver,
+                                          ForkJoinPool pool, int rounds) {
+        Timings timings = new Timings(rounds);
+        double checksum = 0.0;
+        for (int round = 0; round < WARMUP_ROUNDS + rounds; round++) {
+            long start = System.nanoTime();
+            // An epsilon of 0 makes every solver run all the iterations.
+            PageRankResult result = solver.solve(graph, DECAY, 0.0, ITERATIONS, pool);
+            timings.add(round, start);
+            checksum = checksum(result.getRanks());
+        }
+        timings.divide(ITERATIONS);
+        System.out.println(String.format("  %-40s %s per iteration   (checksum %.6f)",
+                "iteration: " + name, timings, checksum));
+    }
+
+    /**
+     * Prints the time the given solver takes to converge.
+     */
+    private static void measureConvergence(LinkGraph graph, PageRankSolver solver, double epsilon, int rounds,
+                                           double[] expected) {
+        Timings timings = new Timings(rounds);
+        PageRankResult result = null;
+        for (int round = 0; round < WARMUP_ROUNDS + rounds; round++) {
+            long start = System.nanoTime();
+            result = solver.solve(graph, DECAY, epsilon, LIMIT, null);
+            timings.add(round, start);
+        }
+        double[] ranks = result.getRanks();
+        double maxDifference = 0.0;
+        for (int page = 0; page < ranks.length; page++) {
+            maxDifference = Math.max(maxDifference, Math.abs(ranks[page] - expected[page]));
+        }
+        System.out.println(String.format("  %-40s %s, %d iterations, max difference %.1e   (checksum %.6f)",
+                "convergence: " + solver, timings, result.getIterationCount(), maxDifference,
+                checksum(ranks)));
+    }
+
+    /**
+     * Returns a sum of the ranks that depends on every one of them and on their
+     * order.
+     */
+    private static double checksum(double[] ranks) {
+        double sum = 0.0;
+        for (int page = 0; page < ranks.length; page++) {
+            sum += ranks[page] * (page % 7 + 1);
+        }
+        return sum;
+    }
+
+    /**
+     * The times taken by the measured rounds of a benchmark, in milliseconds.
+     */
+    private static class Timings {
+        private final double[] times;
+
+        public Timings(int rounds) {
+            this.times = new double[rounds];
+        }
+
+        /**
+         * Records the time elapsed since 'start' (in nanoseconds) for the given
+         * round, unless it is a warmup round.
+         */
+        public void add(int round, long start) {
+            double time = (System.nanoTime() - start) / 1e6;
+            if (round >= WARMUP_ROUNDS) {
+                this.times[round - WARMUP_ROUNDS] = time;
+            }
+        }
+
+        /**
+         * Divides every time by the given number, to get the time of a single step.
+         */
+        public void divide(int steps) {
+            for (int i = 0; i < this.times.length; i++) {
+                this.times[i] /= steps;
+            }
+        }
+
+        @Override
+        public String toString() {
+            double mean = 0.0;
+            for (double time : this.times) {
+                mean += time;
+            }
+            mean /= this.times.length;
+            double variance = 0.0;
+            for (double time : this.times) {
+                variance += (time - mean) * (time - mean);
+            }
+            double deviation = this.times.length > 1 ? Math.sqrt(variance / (this.times.length - 1)) : 0.0;
+            return String.format("%9.2f ms +/- %6.2f", mean, deviation);
+        }
+    }
+}
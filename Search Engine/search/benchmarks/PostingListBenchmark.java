@@ -0,0 +1,209 @@
+package search.benchmarks;
+
+import datastructures.concrete.DoubleLinkedList;
+import datastructures.interfaces.IList;
+import search.Main;
+import search.SearchEngine;
+import search.index.PostingList;
+import search.index.SearchIndex;
+
+import java.util.Random;
+
+/**
+ * Measures how much space compressed posting lists save, and what decoding them
+ * costs, on the index of a data folder.
+ *
+ * As a baseline, every posting list is also copied into plain int[] arrays of
+ * document ids and frequencies (the layout used before posting lists were
+ * compressed), and the same work is timed on both.
+ *
+ * Usage: PostingListBenchmark [data folder name] [number of queries]
+ */
+public class PostingListBenchmark {
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    public static void main(String[] args) {
+        String dataFolderName = args.length > 0 ? args[0] : Main.DATA_FOLDER_NAME;
+        int queryCount = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        SearchIndex index = SearchEngine.indexDataFolder(dataFolderName);
+        int termCount = index.getTermCount();
+
+        long postingCount = 0;
+        long compressedBytes = 0;
+        int[][] documents = new int[termCount][];
+        int[][] frequencies = new int[termCount][];
+        for (int termId = 0; termId < termCount; termId++) {
+            PostingList list = index.getPostings(termId);
+            postingCount += list.size();
+            compressedBytes += list.getByteSize();
+            documents[termId] = new int[list.size()];
+            frequencies[termId] = new int[list.size()];
+            PostingList.Cursor cursor = list.cursor();
+            for (int i = 0; cursor.document() != PostingList.END; i++) {
+                documents[termId][i] = cursor.document();
+                frequencies[termId][i] = cursor.frequency();
+                cursor.next();
+            }
+        }
+        System.out.println(String.format(
+                "%d terms, %d postings: %.2f bytes per posting compressed, 8.00 uncompressed (%.1f%% of the size)",
+                termCount, postingCount, compressedBytes / (double) postingCount,
+                100.0 * compressedBytes / (8.0 * postingCount)));
+
+        int[][] queries = makeQueries(index, queryCount);
+        double[] accumulator = new double[index.getDocumentCount()];
+
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            boolean measured = round >= WARMUP_ROUNDS;
+
+            long start = System.nanoTime();
+            long checksum = scanCompressed(index, termCount);
+            long compressedScan = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            checksum -= scanArrays(documents, frequencies);
+            long arrayScan = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int[] query : queries) {
+                scoreCompressed(index, query, accumulator);
+            }
+            long compressedQueries = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int[] query : queries) {
+                scoreArrays(documents, frequencies, query, accumulator);
+            }
+            long arrayQueries = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int[] query : queries) {
+                intersectCompressed(index, query);
+            }
+            long compressedIntersections = System.nanoTime() - start;
+
+            if (checksum != 0) {
+                throw new IllegalStateException("Compressed and uncompressed lists disagree");
+            }
+            if (measured) {
+                System.out.println(String.format(
+                        "full scan: %.2f ns/posting compressed, %.2f uncompressed | "
+                                + "scoring: %.1f us/query compressed, %.1f uncompressed | "
+                                + "intersection: %.1f us/query compressed",
+                        compressedScan / (double) postingCount, arrayScan / (double) postingCount,
+                        compressedQueries / 1000.0 / queries.length, arrayQueries / 1000.0 / queries.length,
+                        compressedIntersections / 1000.0 / queries.length));
+            }
+        }
+    }
+
+    /**
+     * Returns random queries of one to four term ids, drawn from the terms of the
+     * index in proportion to how many documents contain them (like real queries,
+     * which mostly use common words).
+     */
+    private static int[][] makeQueries(SearchIndex index, int count) {
+        IList<Integer> pool = new DoubleLinkedList<>();
+        for (int termId = 0; termId < index.getTermCount(); termId++) {
+            // Cap each term's share so a handful of stop words do not take over.
+            int share = Math.min(index.getPostings(termId).size(), 50);
+            for (int i = 0; i < share; i++) {
+                pool.add(termId);
+            }
+        }
+        Integer[] terms = new Integer[pool.size()];
+        int i = 0;
+        for (int termId : pool) {
+            terms[i] = termId;
+            i++;
+        }
+
+        Random random = new Random(42);
+        int[][] output = new int[count][];
+        for (int q = 0; q < count; q++) {
+            output[q] = new int[1 + random.nextInt(4)];
+            for (int j = 0; j < output[q].length; j++) {
+                output[q][j] = terms[random.nextInt(terms.length)];
+            }
+        }
+        return output;
+    }
+
+    private static long scanCompressed(SearchIndex index, int termCount) {
+        long sum = 0;
+        for (int termId = 0; termId < termCount; termId++) {
+            PostingList.Cursor cursor = index.getPostings(termId).cursor();
+            while (cursor.document() != PostingList.END) {
+                sum += cursor.document() + cursor.frequency();
+                cursor.next();
+            }
+        }
+        return sum;
+    }
+
+    private static long scanArrays(int[][] documents, int[][] frequencies) {
+        long sum = 0;
+        for (int termId = 0; termId < documents.length; termId++) {
+            for (int i = 0; i < documents[termId].length; i++) {
+                sum += documents[termId][i] + frequencies[termId][i];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Accumulates a score for every document touched by the query, the way
+     * ExhaustiveRetriever does.
+     */
+    private static void scoreCompressed(SearchIndex index, int[] query, double[] accumulator) {
+        for (int termId : query) {
+            PostingList.Cursor cursor = index.getPostings(termId).cursor();
+            while (cursor.document() != PostingList.END) {
+                accumulator[cursor.document()] += cursor.frequency();
+                cursor.next();
+            }
+        }
+    }
+
+    private static void scoreArrays(int[][] documents, int[][] frequencies, int[] query, double[] accumulator) {
+        for (int termId : query) {
+            int[] ids = documents[termId];
+            for (int i = 0; i < ids.length; i++) {
+                accumulator[ids[i]] += frequencies[termId][i];
+            }
+        }
+    }
+
+    /**
+     * Returns the number of documents containing every word of the query, found by
+     * advancing every cursor to the largest current document -- the access pattern
+     * of MaxScore's non-essential words, which relies on skipping whole blocks.
+     */
+    private static int intersectCompressed(SearchIndex index, int[] query) {
+        PostingList.Cursor[] cursors = new PostingList.Cursor[query.length];
+        for (int i = 0; i < query.length; i++) {
+            cursors[i] = index.getPostings(query[i]).cursor();
+        }
+        int matches = 0;
+        int target = 0;
+        while (true) {
+            boolean aligned = true;
+            for (PostingList.Cursor cursor : cursors) {
+                cursor.advance(target);
+                if (cursor.document() == PostingList.END) {
+                    return matches;
+                }
+                if (cursor.document() != target) {
+                    target = cursor.document();
+                    aligned = false;
+                }
+            }
+            if (aligned) {
+                matches++;
+                target++;
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package search.benchmarks;
+
+import search.analyzers.pagerank.GraphReordering;
+import search.analyzers.pagerank.LinkGraph;
+import search.analyzers.pagerank.PageOrdering;
+import search.analyzers.pagerank.PageRankResult;
+import search.analyzers.pagerank.PowerIteration;
+
+import java.util.Random;
+
+/**
+ * Measures how renumbering the pages of a graph (see GraphReordering) affects the
+ * time power iteration takes, on a synthetic graph (see SyntheticGraphs), whose
+ * popular pages are scattered over the whole range of ids.
+ *
+ * Every run does a fixed number of iterations on a single thread, so the timings
+ * only differ by how well the reads of the rank array hit the cache. Java cannot
+ * read the cache miss counters of the processor, but on Linux they can be compared
+ * by timing a single ordering at a time under perf:
+ *
+ *     perf stat -e cache-references,cache-misses java ... ReorderingBenchmark 500000 10 20 DEGREE
+ *
+ * Usage: ReorderingBenchmark [number of pages] [average number of links per page] [iterations]
+ *                            [ordering]
+ */
+public class ReorderingBenchmark {
+    private static final double DECAY = 0.85;
+    private static final double DANGLING_FRACTION = 0.1;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        int pageCount = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int averageDegree = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        PageOrdering[] orderings = args.length > 3
+                ? new PageOrdering[] {PageOrdering.valueOf(args[3])}
+                : PageOrdering.values();
+
+        long start = System.nanoTime();
+        LinkGraph graph = SyntheticGraphs.makeLinkGraph(pageCount, averageDegree, DANGLING_FRACTION,
+                new Random(42));
+        System.out.println(String.format("%d pages, %d links (generated in %.1f sec)",
+                graph.getPageCount(), graph.getLinkCount(), (System.nanoTime() - start) / 1e9));
+        double[] expected = PowerIteration.solve(graph, DECAY, 0.0, iterations).getRanks();
+
+        for (PageOrdering ordering : orderings) {
+            start = System.nanoTime();
+            int[] order = GraphReordering.computeOrder(graph, ordering);
+            LinkGraph reordered = GraphReordering.reorder(graph, order);
+            double reorderTime = (System.nanoTime() - start) / 1e6;
+
+            double best = Double.POSITIVE_INFINITY;
+            PageRankResult result = null;
+            for (int round = 0; round < ROUNDS; round++) {
+                start = System.nanoTime();
+                result = PowerIteration.solve(reordered, DECAY, 0.0, iterations);
+                best = Math.min(best, (System.nanoTime() - start) / 1e6);
+            }
+
+            double[] ranks = GraphReordering.restoreOrder(result, order).getRanks();
+            double maxDifference = 0.0;
+            for (int page = 0; page < ranks.length; page++) {
+                maxDifference = Math.max(maxDifference, Math.abs(ranks[page] - expected[page]));
+            }
+            System.out.println(String.format(
+                    "%-22s %.1f ms/iteration (reordering took %.0f ms, max difference %.1e)",
+                    ordering, best / iterations, reorderTime, maxDifference));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package search.benchmarks;
+
+import search.analyzers.pagerank.LinkGraph;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates random graphs that look like the web, to benchmark page rank on graphs
+ * of any size (10 thousand to 10 million pages is the useful range; 10 million
+ * pages with 10 links each take about 2GB of heap).
+ *
+ * In-degrees follow a power law: a few pages are linked to from everywhere, most
+ * pages from almost nowhere. The popular pages are scattered over the whole range
+ * of ids, as they would be in a crawl. A given fraction of the pages has no links
+ * at all (dangling pages); the others have a number of links drawn from a
+ * heavy-tailed distribution.
+ *
+ * The same arguments and seed always give the same graph.
+ */
+public class SyntheticGraphs {
+    // Link targets are drawn as N * u^SKEW for a uniform u, so page 'i' (before
+    // shuffling) is linked to about i^(1 / SKEW - 1) times as often as page 0.
+    private static final double SKEW = 3.0;
+
+    // The shape of the Pareto distribution the out-degrees are drawn from.
+    private static final double DEGREE_SHAPE = 1.5;
+
+    /**
+     * Returns the links leaving every page of a random graph of the given number of
+     * pages: page 'u' links to every page of the returned array's element 'u', in
+     * increasing order, without duplicates or links to itself.
+     *
+     * @param averageDegree      the average number of links leaving pages that are not
+     *                           dangling (roughly: duplicate links are dropped)
+     * @param danglingFraction   the fraction of pages without links, between 0 and 1
+     */
+    public static int[][] makeOutLinks(int pageCount, int averageDegree, double danglingFraction, Random random) {
+        if (danglingFraction < 0.0 || danglingFraction > 1.0) {
+            throw new IllegalArgumentException("The fraction of dangling pages must be between 0 and 1");
+        }
+        int[] permutation = new int[pageCount];
+        for (int page = 0; page < pageCount; page++) {
+            permutation[page] = page;
+        }
+        for (int page = pageCount - 1; page > 0; page--) {
+            int other = random.nextInt(page + 1);
+            int temp = permutation[page];
+            permutation[page] = permutation[other];
+            permutation[other] = temp;
+        }
+
+        // A Pareto distribution with shape a and minimum m has a mean of a m / (a - 1).
+        double minimumDegree = averageDegree * (DEGREE_SHAPE - 1.0) / DEGREE_SHAPE;
+        int[][] outLinks = new int[pageCount][];
+        for (int page = 0; page < pageCount; page++) {
+            if (random.nextDouble() < danglingFraction) {
+                outLinks[page] = new int[0];
+                continue;
+            }
+            double pareto = Math.pow(1.0 - random.nextDouble(), -1.0 / DEGREE_SHAPE);
+            int degree = (int) Math.min(pageCount - 1, Math.ceil(pareto * minimumDegree));
+            int[] targets = new int[degree];
+            int count = 0;
+            for (int i = 0; i < degree; i++) {
+                int target = permutation[(int) (pageCount * Math.pow(random.nextDouble(), SKEW))];
+                if (target != page) {
+                    targets[count] = target;
+                    count++;
+                }
+            }
+            outLinks[page] = removeDuplicates(targets, count);
+        }
+        return outLinks;
+    }
+
+    /**
+     * Returns a random graph made by makeOutLinks(). Its pages are only known by id.
+     */
+    public static LinkGraph makeLinkGraph(int pageCount, int averageDegree, double danglingFraction,
+                                          Random random) {
+        return new LinkGraph(pageCount, makeOutLinks(pageCount, averageDegree, danglingFraction, random));
+    }
+
+    /**
+     * Returns the distinct values among the first 'count' values of the given
+     * array, in increasing order. The array is sorted in place.
+     */
+    private static int[] removeDuplicates(int[] values, int count) {
+        Arrays.sort(values, 0, count);
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            if (size == 0 || values[i] != values[size - 1]) {
+                values[size] = values[i];
+                size++;
+            }
+        }
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,68 @@
+package search.index;
+
+/**
+ * The time by which a search must be done. Retrievers check it every so often
+ * while scoring, and stop early (returning the best documents found so far) once
+ * it has passed.
+ *
+ * A deadline also remembers whether anyone stopped because of it, so the caller
+ * can tell whether the results are complete (see wasReached()). A single deadline
+ * may be shared by every thread working on the same search.
+ */
+public class Deadline {
+    /**
+     * A deadline that never passes.
+     */
+    public static final Deadline NONE = new Deadline(0, false);
+
+    // How many documents retrievers score between two looks at the clock. Reading
+    // the clock costs about as much as scoring a document.
+    public static final int CHECK_INTERVAL = 256;
+
+    private final long time;
+    private final boolean isSet;
+    private volatile boolean reached;
+
+    private Deadline(long time, boolean isSet) {
+        this.time = time;
+        this.isSet = isSet;
+        this.reached = false;
+    }
+
+    /**
+     * Returns a deadline passing the given number of milliseconds from now. Budgets
+     * too long to count in nanoseconds (some 292 years) never pass.
+     */
+    public static Deadline after(long milliseconds) {
+        if (milliseconds < 0) {
+            throw new IllegalArgumentException("The time budget cannot be negative");
+        }
+        if (milliseconds > Long.MAX_VALUE / 1_000_000) {
+            return NONE;
+        }
+        // This may wrap around, which hasPassed() takes into account.
+        return new Deadline(System.nanoTime() + milliseconds * 1_000_000, true);
+    }
+
+    /**
+     * Returns 'true' if the deadline has passed. Callers must stop working (and so
+     * leave their results incomplete) whenever this returns 'true'.
+     */
+    public boolean hasPassed() {
+        if (this.reached) {
+            return true;
+        }
+        if (!this.isSet || System.nanoTime() - this.time < 0) {
+            return false;
+        }
+        this.reached = true;
+        return true;
+    }
+
+    /**
+     * Returns 'true' if some search stopped early because of this deadline.
+     */
+    public boolean wasReached() {
+        return this.reached;
+    }
+}
@@ -0,0 +1,117 @@
+package search.index;
+
+import datastructures.interfaces.IList;
+
+/**
+ * Finds the top-k documents for a query by scoring every document that contains
+ * at least one of the query's words.
+ *
+ * Scores are accumulated one posting list at a time into per-thread scratch space,
+ * which is reused across that thread's queries (and grown to fit the largest range
+ * of documents searched so far: a shard of a segment, or the whole segment), so a
+ * single instance may be used from many threads at once.
+ * The best k documents are kept by a TopKCollector, so no object is made for the
+ * documents that do not make it.
+ */
+public class ExhaustiveRetriever {
+    private final ThreadLocal<QueryScratch> scratch;
+
+    public ExhaustiveRetriever() {
+        this.scratch = ThreadLocal.withInitial(() -> new QueryScratch(0));
+    }
+
+    /**
+     * Returns the (at most) k best scoring documents of the given index, sorted
+     * from best to worst.
+     */
+    public IList<ScoredDocument> findTopK(WeightedQuery query, SearchIndex index, int k) {
+        return this.findTopK(query, index, k, 0, index.getDocumentCount(), Deadline.NONE);
+    }
+
+    /**
+     * Same as above, but only considers the documents with ids from 'start' up to
+     * (but not including) 'end'.
+     *
+     * If the deadline passes before we are done, stops reading posting lists and
+     * returns the best documents by the part of their score computed so far: since
+     * the words of the query are read one at a time, documents only containing the
+     * words we did not get to are missing.
+     */
+    public IList<ScoredDocument> findTopK(WeightedQuery query, SearchIndex index, int k, int start, int end,
+                                          Deadline deadline) {
+        // The scratch only covers the documents in range, indexed from 'start'.
+        QueryScratch numerators = this.scratch.get();
+        if (numerators.values.length < end - start) {
+            numerators = new QueryScratch(end - start);
+            this.scratch.set(numerators);
+        }
+        try {
+            int postingCount = 0;
+            boolean isLate = false;
+            for (int i = 0; i < query.size() && !isLate; i++) {
+                double weight = query.getWeight(i);
+                PostingList.Cursor cursor = index.getPostings(query.getTermId(i)).cursor();
+                cursor.advance(start);
+                while (cursor.document() < end) {
+                    postingCount++;
+                    if (postingCount % Deadline.CHECK_INTERVAL == 0 && deadline.hasPassed()) {
+                        isLate = true;
+                        break;
+                    }
+                    numerators.add(cursor.document() - start, weight * cursor.frequency());
+                    cursor.next();
+                }
+            }
+
+            TopKCollector topK = new TopKCollector(k);
+            for (int i = 0; i < numerators.touchedCount; i++) {
+                int id = start + numerators.touched[i];
+                if (!index.isDeleted(id)) {
+                    topK.offer(id, numerators.values[id - start] * index.getDocumentFactor(id));
+                }
+            }
+            return topK.toList();
+        } finally {
+            numerators.clear();
+        }
+    }
+
+    /**
+     * Per-thread accumulator for the score of every document touched by a query.
+     *
+     * 'values' is indexed by document id (minus the first id searched) and is all
+     * zeros between queries; 'touched' lists the ids written to by the current
+     * query so that clearing costs only as much as the query did.
+     */
+    private static class QueryScratch {
+        private final double[] values;
+        private final boolean[] isTouched;
+        private final int[] touched;
+        private int touchedCount;
+
+        public QueryScratch(int numDocuments) {
+            this.values = new double[numDocuments];
+            this.isTouched = new boolean[numDocuments];
+            this.touched = new int[numDocuments];
+            this.touchedCount = 0;
+        }
+
+        public void add(int id, double value) {
+            if (!this.isTouched[id]) {
+                this.isTouched[id] = true;
+                this.touched[this.touchedCount] = id;
+                this.touchedCount++;
+            }
+            this.values[id] += value;
+        }
+
+        public void clear() {
+            for (int i = 0; i < this.touchedCount; i++) {
+                int id = this.touched[i];
+                this.values[id] = 0.0;
+                this.isTouched[id] = false;
+            }
+            this.touchedCount = 0;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package search.index;
+
+import datastructures.concrete.dictionaries.ChainedHashDictionary;
+import datastructures.interfaces.IDictionary;
+import misc.exceptions.NoSuchKeyException;
+
+import java.util.Arrays;
+
+/**
+ * Assigns every distinct item a dense integer id (0, 1, 2, ...) in the order
+ * the items are first registered, and maps ids back to their items.
+ *
+ * We use this to refer to documents and words by int instead of by URI or
+ * String, which lets us store per-document and per-word data in plain arrays.
+ */
+public class IdRegistry<T> {
+    private IDictionary<T, Integer> ids;
+    private T[] items;
+    private int size;
+
+    public IdRegistry() {
+        this.ids = new ChainedHashDictionary<>();
+        this.items = makeArrayOfT(16);
+        this.size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T[] makeArrayOfT(int arraySize) {
+        return (T[]) new Object[arraySize];
+    }
+
+    /**
+     * Returns the id of the given item, assigning it the next free id if it
+     * has never been registered before.
+     */
+    public int register(T item) {
+        Integer id = this.ids.getOrDefault(item, null);
+        if (id != null) {
+            return id;
+        }
+        if (this.size == this.items.length) {
+            this.items = Arrays.copyOf(this.items, this.size * 2);
+        }
+        this.items[this.size] = item;
+        this.ids.put(item, this.size);
+        this.size++;
+        return this.size - 1;
+    }
+
+    /**
+     * Returns 'true' if the given item has been registered.
+     */
+    public boolean contains(T item) {
+        return this.ids.containsKey(item);
+    }
+
+    /**
+     * Returns the id of the given item.
+     *
+     * @throws NoSuchKeyException  if the item has not been registered
+     */
+    public int getId(T item) {
+        return this.ids.get(item);
+    }
+
+    /**
+     * Returns the id of the given item, or -1 if it has not been registered.
+     */
+    public int getIdOrDefault(T item) {
+        return this.ids.getOrDefault(item, -1);
+    }
+
+    /**
+     * Returns the item with the given id.
+     *
+     * @throws IndexOutOfBoundsException  if no item has the given id
+     */
+    public T getItem(int id) {
+        if (id < 0 || id >= this.size) {
+            throw new IndexOutOfBoundsException();
+        }
+        return this.items[id];
+    }
+
+    /**
+     * Returns the number of registered items. Ids range from 0 up to (but not
+     * including) this number.
+     */
+    public int size() {
+        return this.size;
+    }
+}
@@ -0,0 +1,132 @@
+package search.index;
+
+import search.models.WebpageSummary;
+
+import java.net.URI;
+
+/**
+ * A search index held entirely on the heap.
+ */
+public class InMemoryIndex implements SearchIndex {
+    private final IdRegistry<String> terms;
+    private final double[] idfScores;
+    private final PostingList[] postings;
+    private final double[] maxImpacts;
+    private final IdRegistry<URI> documents;
+    private final int[] documentLengths;
+    private final double[] documentNorms;
+    private final double[] pageRanks;
+    private final double[] documentFactors;
+    private final WebpageSummary[] summaries;
+
+    /**
+     * Creates an index from the given pieces. Every array is indexed by term id or
+     * document id, as given by 'terms' and 'documents'.
+     *
+     * @param idfScores        The IDF score of every word
+     * @param postings         The posting list of every word
+     * @param documentLengths  The number of words in every document
+     * @param documentNorms    The norm of the TF-IDF vector of every document
+     * @param pageRanks        The page rank of every document
+     * @param documentFactors  The document factor of every document (see
+     *                         SearchIndex.getDocumentFactor)
+     * @param summaries        The summary of every document
+     */
+    public InMemoryIndex(IdRegistry<String> terms, double[] idfScores, PostingList[] postings,
+                         IdRegistry<URI> documents, int[] documentLengths, double[] documentNorms,
+                         double[] pageRanks, double[] documentFactors, WebpageSummary[] summaries) {
+        this.terms = terms;
+        this.idfScores = idfScores;
+        this.postings = postings;
+        this.documents = documents;
+        this.documentLengths = documentLengths;
+        this.documentNorms = documentNorms;
+        this.pageRanks = pageRanks;
+        this.documentFactors = documentFactors;
+        this.summaries = summaries;
+        this.maxImpacts = this.computeMaxImpacts();
+    }
+
+    /**
+     * Returns the largest (frequency) * (document factor) of every word, indexed
+     * by term id.
+     */
+    private double[] computeMaxImpacts() {
+        double[] output = new double[this.postings.length];
+        for (int termId = 0; termId < output.length; termId++) {
+            double max = 0.0;
+            PostingList.Cursor cursor = this.postings[termId].cursor();
+            while (cursor.document() != PostingList.END) {
+                max = Math.max(max, cursor.frequency() * this.documentFactors[cursor.document()]);
+                cursor.next();
+            }
+            output[termId] = max;
+        }
+        return output;
+    }
+
+    @Override
+    public int getDocumentCount() {
+        return this.documents.size();
+    }
+
+    @Override
+    public int getTermCount() {
+        return this.terms.size();
+    }
+
+    @Override
+    public String getTerm(int termId) {
+        return this.terms.getItem(termId);
+    }
+
+    @Override
+    public int getTermId(String word) {
+        return this.terms.getIdOrDefault(word);
+    }
+
+    @Override
+    public double getIdf(int termId) {
+        return this.idfScores[termId];
+    }
+
+    @Override
+    public PostingList getPostings(int termId) {
+        return this.postings[termId];
+    }
+
+    @Override
+    public double getMaxImpact(int termId) {
+        return this.maxImpacts[termId];
+    }
+
+    @Override
+    public int getDocumentId(URI uri) {
+        return this.documents.getIdOrDefault(uri);
+    }
+
+    @Override
+    public int getDocumentLength(int documentId) {
+        return this.documentLengths[documentId];
+    }
+
+    @Override
+    public double getDocumentNorm(int documentId) {
+        return this.documentNorms[documentId];
+    }
+
+    @Override
+    public double getPageRank(int documentId) {
+        return this.pageRanks[documentId];
+    }
+
+    @Override
+    public double getDocumentFactor(int documentId) {
+        return this.documentFactors[documentId];
+    }
+
+    @Override
+    public WebpageSummary getSummary(int documentId) {
+        return this.summaries[documentId];
+    }
+}
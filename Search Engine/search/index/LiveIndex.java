@@ -0,0 +1,477 @@
+package search.index;
+
+import datastructures.concrete.DoubleLinkedList;
+import datastructures.concrete.KVPair;
+import datastructures.concrete.dictionaries.ChainedHashDictionary;
+import datastructures.interfaces.IDictionary;
+import datastructures.interfaces.IList;
+import search.models.Webpage;
+
+import java.net.URI;
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A search index that pages can be added to and deleted from while it is being
+ * queried.
+ *
+ * The index is made of immutable segments, plus a small buffer of recently added
+ * pages:
+ *
+ *  - Adding a page puts it in the buffer. Once the buffer holds 'bufferLimit'
+ *    pages, it is flushed: turned into a new segment.
+ *  - Deleting a page from a segment only marks it as deleted (a "tombstone");
+ *    it keeps taking up space until the segment is merged.
+ *  - Whenever there are more than 'mergeFactor' segments, the smallest ones are
+ *    merged into one on a background thread, dropping deleted pages.
+ *
+ * Posting lists store term frequencies, and IDF scores are computed when a query
+ * runs, from the number of documents containing each word summed over every
+ * segment. Like in most search engines, a deleted page still counts towards those
+ * numbers until its segment is merged.
+ *
+ * Document norms depend on IDF scores too, but are stored in the segments. They are
+ * computed with the IDF scores as of when each segment was built (and recomputed
+ * whenever segments are merged), so they drift slightly as pages come and go.
+ *
+ * Queries run against a Snapshot, which never changes once taken; updates are
+ * serialized by locking this object. All methods are safe to call from many
+ * threads at once.
+ */
+public class LiveIndex implements AutoCloseable {
+    public static final int DEFAULT_BUFFER_LIMIT = 256;
+    public static final int DEFAULT_MERGE_FACTOR = 8;
+
+    /**
+     * A segment, along with the (mutable) set of its deleted documents.
+     */
+    private static class SegmentState {
+        private final SearchIndex segment;
+        private final BitSet deleted;
+        // Kept across views, so posting lists are only ever split once per segment.
+        private final StaticRankTiers tiers;
+        // The view of this segment used by the current snapshot, or null if the
+        // deleted documents changed since it was made.
+        private LiveSegment view;
+        private boolean isMerging;
+
+        public SegmentState(SearchIndex segment) {
+            this.segment = segment;
+            this.deleted = new BitSet();
+            this.tiers = new StaticRankTiers(segment);
+            this.view = null;
+            this.isMerging = false;
+        }
+
+        public LiveSegment getView() {
+            if (this.view == null) {
+                this.view = new LiveSegment(this.segment, (BitSet) this.deleted.clone(), this.tiers);
+            }
+            return this.view;
+        }
+    }
+
+    /**
+     * A page in the buffer.
+     */
+    private static class PendingPage {
+        private final Webpage page;
+        private final double pageRank;
+
+        public PendingPage(Webpage page, double pageRank) {
+            this.page = page;
+            this.pageRank = pageRank;
+        }
+    }
+
+    private final int bufferLimit;
+    private final int mergeFactor;
+    private final IList<SegmentState> segments;
+    private IDictionary<URI, PendingPage> buffer;
+    private final ExecutorService merger;
+    private long version;
+    private volatile Snapshot snapshot;
+
+    /**
+     * Creates a live index whose only segment is the given index.
+     */
+    public LiveIndex(SearchIndex base) {
+        this(base, DEFAULT_BUFFER_LIMIT, DEFAULT_MERGE_FACTOR);
+    }
+
+    public LiveIndex(SearchIndex base, int bufferLimit, int mergeFactor) {
+        if (bufferLimit < 1 || mergeFactor < 2) {
+            throw new IllegalArgumentException();
+        }
+        this.bufferLimit = bufferLimit;
+        this.mergeFactor = mergeFactor;
+        this.segments = new DoubleLinkedList<>();
+        this.segments.add(new SegmentState(base));
+        this.buffer = new ChainedHashDictionary<>();
+        this.merger = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "index-merger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.version = 0;
+        this.snapshot = null;
+    }
+
+    /**
+     * Returns the current state of the index. The snapshot does not see changes
+     * made after this method returns.
+     */
+    public Snapshot snapshot() {
+        Snapshot current = this.snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (this.snapshot == null) {
+                this.snapshot = this.makeSnapshot();
+            }
+            return this.snapshot;
+        }
+    }
+
+    /**
+     * Returns a number that changes every time the contents of this index (or the
+     * scores of its documents) change.
+     */
+    public synchronized long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Returns the number of pages in this index, not counting deleted ones.
+     */
+    public synchronized int getDocumentCount() {
+        int count = this.buffer.size();
+        for (SegmentState state : this.segments) {
+            count += state.segment.getDocumentCount() - state.deleted.cardinality();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the page rank the page with the given uri was added with, or zero if
+     * this index has no such page.
+     */
+    public synchronized double getPageRank(URI uri) {
+        PendingPage pending = this.buffer.getOrDefault(uri, null);
+        if (pending != null) {
+            return pending.pageRank;
+        }
+        for (SegmentState state : this.segments) {
+            int id = state.segment.getDocumentId(uri);
+            if (id >= 0 && !state.deleted.get(id)) {
+                return state.segment.getPageRank(id);
+            }
+        }
+        return 0.0;
+    }
+
+    /**
+     * Adds the given page to this index, replacing any page with the same uri.
+     */
+    public synchronized void addPage(Webpage page, double pageRank) {
+        this.deleteLivePage(page.getUri());
+        this.buffer.put(page.getUri(), new PendingPage(page, pageRank));
+        this.changed();
+        if (this.buffer.size() >= this.bufferLimit) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Deletes the page with the given uri from this index.
+     *
+     * @return 'true' if the index contained such a page
+     */
+    public synchronized boolean deletePage(URI uri) {
+        if (this.deleteLivePage(uri)) {
+            this.changed();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Turns the buffer into a new segment, if it is not empty.
+     */
+    public synchronized void flush() {
+        if (this.buffer.isEmpty()) {
+            return;
+        }
+        IList<LiveSegment> views = new DoubleLinkedList<>();
+        for (SegmentState state : this.segments) {
+            views.add(state.getView());
+        }
+        SegmentBuilder builder = this.buildBuffer();
+        SearchIndex segment = builder.build(sealingIdfScores(views, builder));
+        this.segments.add(new SegmentState(segment));
+        this.buffer = new ChainedHashDictionary<>();
+        this.changed();
+        this.scheduleMerge();
+    }
+
+    /**
+     * Stops the background merge thread, waiting for any merge in progress to finish.
+     */
+    @Override
+    public void close() {
+        this.merger.shutdown();
+        try {
+            this.merger.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Records that the contents of this index changed.
+     */
+    private void changed() {
+        this.version++;
+        this.snapshot = null;
+    }
+
+    /**
+     * Removes the page with the given uri from the buffer, or marks it as deleted
+     * in whichever segment holds it. Returns 'true' if there was such a page.
+     */
+    private boolean deleteLivePage(URI uri) {
+        if (this.buffer.containsKey(uri)) {
+            this.buffer.remove(uri);
+            return true;
+        }
+        for (SegmentState state : this.segments) {
+            int id = state.segment.getDocumentId(uri);
+            if (id >= 0 && !state.deleted.get(id)) {
+                state.deleted.set(id);
+                state.view = null;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private SegmentBuilder buildBuffer() {
+        SegmentBuilder builder = new SegmentBuilder();
+        for (KVPair<URI, PendingPage> pair : this.buffer) {
+            builder.add(pair.getValue().page, pair.getValue().pageRank);
+        }
+        return builder;
+    }
+
+    private Snapshot makeSnapshot() {
+        IList<LiveSegment> views = new DoubleLinkedList<>();
+        for (SegmentState state : this.segments) {
+            views.add(state.getView());
+        }
+        if (!this.buffer.isEmpty()) {
+            // The buffer is small, so we simply rebuild a segment out of it whenever
+            // it changes.
+            SegmentBuilder builder = this.buildBuffer();
+            views.add(new LiveSegment(builder.build(sealingIdfScores(views, builder)), new BitSet()));
+        }
+        return new Snapshot(views, this.version);
+    }
+
+    /**
+     * Returns the IDF scores to build a new segment with: those of the given
+     * segments, plus the pages about to be added from the given builder.
+     */
+    private static ToDoubleFunction<String> sealingIdfScores(IList<LiveSegment> views, SegmentBuilder builder) {
+        int documentCount = builder.size();
+        for (LiveSegment view : views) {
+            documentCount += view.getDocumentCount();
+        }
+        int total = documentCount;
+        return word -> Math.log(
+                total / (double) (countDocuments(views, word) + builder.getDocumentFrequency(word)));
+    }
+
+    /**
+     * Returns the number of documents (deleted or not) containing the given word
+     * in the given segments.
+     */
+    private static int countDocuments(IList<LiveSegment> views, String word) {
+        int count = 0;
+        for (LiveSegment view : views) {
+            int termId = view.getTermId(word);
+            if (termId >= 0) {
+                count += view.getPostings(termId).size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Starts merging the smallest segments in the background, if there are too many
+     * and no merge is already in progress.
+     */
+    private void scheduleMerge() {
+        IList<SegmentState> candidates = new DoubleLinkedList<>();
+        for (SegmentState state : this.segments) {
+            if (state.isMerging) {
+                return;
+            }
+            candidates.add(state);
+        }
+        if (candidates.size() <= this.mergeFactor) {
+            return;
+        }
+
+        // Pick the 'mergeFactor' smallest segments, keeping them in index order.
+        while (candidates.size() > this.mergeFactor) {
+            int largest = 0;
+            for (int i = 1; i < candidates.size(); i++) {
+                if (candidates.get(i).segment.getDocumentCount()
+                        > candidates.get(largest).segment.getDocumentCount()) {
+                    largest = i;
+                }
+            }
+            candidates.delete(largest);
+        }
+
+        IList<LiveSegment> allViews = new DoubleLinkedList<>();
+        for (SegmentState state : this.segments) {
+            allViews.add(state.getView());
+        }
+        IList<LiveSegment> views = new DoubleLinkedList<>();
+        for (SegmentState state : candidates) {
+            state.isMerging = true;
+            views.add(state.getView());
+        }
+        ToDoubleFunction<String> idfScores = sealingIdfScores(allViews, new SegmentBuilder());
+
+        this.merger.execute(() -> {
+            InMemoryIndex merged = null;
+            try {
+                merged = SegmentMerger.merge(views, idfScores);
+            } finally {
+                this.finishMerge(candidates, views, merged);
+            }
+        });
+    }
+
+    /**
+     * Replaces the given segments with the result of merging them (unless the merge
+     * failed, in which case 'merged' is null), carrying over any pages deleted from
+     * them while the merge was running.
+     */
+    private synchronized void finishMerge(IList<SegmentState> sources, IList<LiveSegment> views,
+                                          InMemoryIndex merged) {
+        if (merged == null) {
+            for (SegmentState state : sources) {
+                state.isMerging = false;
+            }
+            return;
+        }
+
+        SegmentState result = new SegmentState(merged);
+        int position = this.segments.indexOf(sources.get(0));
+        int i = 0;
+        for (SegmentState state : sources) {
+            LiveSegment view = views.get(i);
+            for (int id = state.deleted.nextSetBit(0); id >= 0; id = state.deleted.nextSetBit(id + 1)) {
+                if (!view.isDeleted(id)) {
+                    int newId = merged.getDocumentId(state.segment.getSummary(id).getUri());
+                    if (newId >= 0) {
+                        result.deleted.set(newId);
+                    }
+                }
+            }
+            this.segments.delete(this.segments.indexOf(state));
+            i++;
+        }
+        this.segments.insert(Math.min(position, this.segments.size()), result);
+        this.changed();
+        this.scheduleMerge();
+    }
+
+    /**
+     * The state of a LiveIndex at some point in time: a list of segments, each with
+     * its own document ids.
+     */
+    public static class Snapshot {
+        private final LiveSegment[] segments;
+        private final int documentCount;
+        private final long version;
+
+        private Snapshot(IList<LiveSegment> segments, long version) {
+            this.segments = new LiveSegment[segments.size()];
+            int count = 0;
+            int i = 0;
+            for (LiveSegment segment : segments) {
+                this.segments[i] = segment;
+                count += segment.getDocumentCount();
+                i++;
+            }
+            this.documentCount = count;
+            this.version = version;
+        }
+
+        public int getSegmentCount() {
+            return this.segments.length;
+        }
+
+        public LiveSegment getSegment(int i) {
+            return this.segments[i];
+        }
+
+        /**
+         * Returns the version of the index this snapshot was taken at.
+         */
+        public long getVersion() {
+            return this.version;
+        }
+
+        /**
+         * Returns the number of documents in every segment, including deleted ones.
+         */
+        public int getDocumentCount() {
+            return this.documentCount;
+        }
+
+        /**
+         * Returns the index of the segment holding the live page with the given uri,
+         * or -1 if there is none.
+         */
+        public int findSegment(URI uri) {
+            for (int i = 0; i < this.segments.length; i++) {
+                if (this.segments[i].findLiveDocument(uri) >= 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the IDF score of every word of the given query that is in at least
+         * one document.
+         */
+        public IDictionary<String, Double> computeIdfScores(IList<String> query) {
+            IDictionary<String, Double> output = new ChainedHashDictionary<>();
+            for (String word : query) {
+                if (!output.containsKey(word)) {
+                    int count = 0;
+                    for (LiveSegment segment : this.segments) {
+                        int termId = segment.getTermId(word);
+                        if (termId >= 0) {
+                            count += segment.getPostings(termId).size();
+                        }
+                    }
+                    if (count > 0) {
+                        output.put(word, Math.log(this.documentCount / (double) count));
+                    }
+                }
+            }
+            return output;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package search.index;
+
+import search.models.WebpageSummary;
+
+import java.net.URI;
+import java.util.BitSet;
+
+/**
+ * An immutable index segment as seen by one LiveIndex snapshot: the segment
+ * itself, plus the ids of the documents that had been deleted from it when the
+ * snapshot was taken. Views of the same segment share its StaticRankTiers.
+ */
+public class LiveSegment implements SearchIndex {
+    private final SearchIndex segment;
+    private final BitSet deleted;
+    private final int deletedCount;
+    private final StaticRankTiers tiers;
+
+    /**
+     * Creates a view of the given segment with the given documents deleted. The
+     * bit set must not be modified afterwards.
+     */
+    public LiveSegment(SearchIndex segment, BitSet deleted) {
+        this(segment, deleted, new StaticRankTiers(segment));
+    }
+
+    /**
+     * Same as above, but with the given tiers of the segment.
+     */
+    public LiveSegment(SearchIndex segment, BitSet deleted, StaticRankTiers tiers) {
+        this.segment = segment;
+        this.deleted = deleted;
+        this.deletedCount = deleted.cardinality();
+        this.tiers = tiers;
+    }
+
+    /**
+     * Returns the underlying segment, ignoring deletions.
+     */
+    public SearchIndex getSegment() {
+        return this.segment;
+    }
+
+    /**
+     * Returns the segment split into two tiers by static rank.
+     */
+    public StaticRankTiers getTiers() {
+        return this.tiers;
+    }
+
+    /**
+     * Returns the number of documents in this segment that have not been deleted.
+     */
+    public int getLiveDocumentCount() {
+        return this.segment.getDocumentCount() - this.deletedCount;
+    }
+
+    /**
+     * Returns the id of the live document with the given uri, or -1 if there is none.
+     */
+    public int findLiveDocument(URI uri) {
+        int id = this.segment.getDocumentId(uri);
+        return id >= 0 && !this.deleted.get(id) ? id : -1;
+    }
+
+    @Override
+    public boolean isDeleted(int documentId) {
+        return this.deleted.get(documentId);
+    }
+
+    @Override
+    public int getDocumentCount() {
+        return this.segment.getDocumentCount();
+    }
+
+    @Override
+    public int getTermCount() {
+        return this.segment.getTermCount();
+    }
+
+    @Override
+    public String getTerm(int termId) {
+        return this.segment.getTerm(termId);
+    }
+
+    @Override
+    public int getTermId(String word) {
+        return this.segment.getTermId(word);
+    }
+
+    @Override
+    public double getIdf(int termId) {
+        return this.segment.getIdf(termId);
+    }
+
+    @Override
+    public PostingList getPostings(int termId) {
+        return this.segment.getPostings(termId);
+    }
+
+    @Override
+    public double getMaxImpact(int termId) {
+        return this.segment.getMaxImpact(termId);
+    }
+
+    @Override
+    public int getDocumentId(URI uri) {
+        return this.segment.getDocumentId(uri);
+    }
+
+    @Override
+    public int getDocumentLength(int documentId) {
+        return this.segment.getDocumentLength(documentId);
+    }
+
+    @Override
+    public double getDocumentNorm(int documentId) {
+        return this.segment.getDocumentNorm(documentId);
+    }
+
+    @Override
+    public double getPageRank(int documentId) {
+        return this.segment.getPageRank(documentId);
+    }
+
+    @Override
+    public double getDocumentFactor(int documentId) {
+        return this.segment.getDocumentFactor(documentId);
+    }
+
+    @Override
+    public WebpageSummary getSummary(int documentId) {
+        return this.segment.getSummary(documentId);
+    }
+}
@@ -0,0 +1,261 @@
+package search.index;
+
+import search.models.WebpageSummary;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only search index stored in a single file written by SegmentWriter,
+ * accessed through a memory mapping.
+ *
+ * Nothing is copied onto the heap when a segment is opened: the operating system
+ * pages in the parts of the file that queries actually touch. Opening a segment
+ * therefore takes about as long as opening a file, no matter how large it is.
+ *
+ * File layout (all numbers big-endian; every section starts on an 8 byte boundary):
+ *
+ *     header           see the HEADER_* offsets below
+ *     term offsets     int[termCount + 1], offsets into the term bytes
+ *     term bytes       the UTF-8 encoding of every word, sorted
+ *     term table       per term: double idf, double max impact, int posting start,
+ *                      int posting length, int posting bytes, 4 bytes of padding
+ *     postings         every encoded posting list (see PostingList), one after another
+ *     document table   per document: double norm, double page rank, double factor,
+ *                      int length, 4 bytes of padding
+ *     summary offsets  int[documentCount + 1], offsets into the summary bytes
+ *     summary bytes    per document: the uri, title and blurb, each as an int
+ *                      length followed by that many bytes of UTF-8
+ *     uri order        int[documentCount], the document ids sorted by uri
+ *
+ * Term ids are the position of the word in sorted order.
+ */
+public class MappedSegment implements SearchIndex {
+    static final int MAGIC = 0x53454731; // "SEG1"
+    static final int VERSION = 3;
+
+    static final int HEADER_MAGIC = 0;
+    static final int HEADER_VERSION = 4;
+    static final int HEADER_DOCUMENT_COUNT = 8;
+    static final int HEADER_TERM_COUNT = 12;
+    static final int HEADER_TERM_OFFSETS = 16;
+    static final int HEADER_TERM_BYTES = 20;
+    static final int HEADER_TERM_TABLE = 24;
+    static final int HEADER_POSTINGS = 28;
+    static final int HEADER_DOCUMENT_TABLE = 32;
+    static final int HEADER_SUMMARY_OFFSETS = 36;
+    static final int HEADER_SUMMARY_BYTES = 40;
+    static final int HEADER_URI_ORDER = 44;
+    static final int HEADER_SIZE = 48;
+
+    static final int TERM_ENTRY_SIZE = 32;
+    static final int DOCUMENT_ENTRY_SIZE = 32;
+
+    private final ByteBuffer buffer;
+    private final int documentCount;
+    private final int termCount;
+    private final int termOffsets;
+    private final int termBytes;
+    private final int termTable;
+    private final int postings;
+    private final int documentTable;
+    private final int summaryOffsets;
+    private final int summaryBytes;
+    private final int uriOrder;
+
+    private MappedSegment(ByteBuffer buffer) {
+        if (buffer.getInt(HEADER_MAGIC) != MAGIC) {
+            throw new IllegalArgumentException("Not an index segment");
+        }
+        if (buffer.getInt(HEADER_VERSION) != VERSION) {
+            throw new IllegalArgumentException(
+                    "Unsupported index segment version " + buffer.getInt(HEADER_VERSION));
+        }
+        this.buffer = buffer;
+        this.documentCount = buffer.getInt(HEADER_DOCUMENT_COUNT);
+        this.termCount = buffer.getInt(HEADER_TERM_COUNT);
+        this.termOffsets = buffer.getInt(HEADER_TERM_OFFSETS);
+        this.termBytes = buffer.getInt(HEADER_TERM_BYTES);
+        this.termTable = buffer.getInt(HEADER_TERM_TABLE);
+        this.postings = buffer.getInt(HEADER_POSTINGS);
+        this.documentTable = buffer.getInt(HEADER_DOCUMENT_TABLE);
+        this.summaryOffsets = buffer.getInt(HEADER_SUMMARY_OFFSETS);
+        this.summaryBytes = buffer.getInt(HEADER_SUMMARY_BYTES);
+        this.uriOrder = buffer.getInt(HEADER_URI_ORDER);
+    }
+
+    /**
+     * Memory-maps the segment stored in the given file.
+     *
+     * @throws IOException               if the file cannot be read
+     * @throws IllegalArgumentException  if the file is not a segment this class can read
+     */
+    public static MappedSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Index segments larger than 2GB are not supported");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedSegment(buffer);
+        }
+    }
+
+    @Override
+    public int getDocumentCount() {
+        return this.documentCount;
+    }
+
+    @Override
+    public int getTermCount() {
+        return this.termCount;
+    }
+
+    @Override
+    public String getTerm(int termId) {
+        if (termId < 0 || termId >= this.termCount) {
+            throw new IndexOutOfBoundsException();
+        }
+        int start = this.buffer.getInt(this.termOffsets + termId * 4);
+        int end = this.buffer.getInt(this.termOffsets + (termId + 1) * 4);
+        return this.readString(this.termBytes + start, end - start);
+    }
+
+    @Override
+    public int getTermId(String word) {
+        int low = 0;
+        int high = this.termCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int comparison = this.getTerm(mid).compareTo(word);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public double getIdf(int termId) {
+        return this.buffer.getDouble(this.termEntry(termId));
+    }
+
+    @Override
+    public PostingList getPostings(int termId) {
+        int entry = this.termEntry(termId);
+        int start = this.buffer.getInt(entry + 16);
+        int length = this.buffer.getInt(entry + 20);
+        int byteLength = this.buffer.getInt(entry + 24);
+        return PostingList.wrap(this.slice(this.postings + start, byteLength), length);
+    }
+
+    @Override
+    public double getMaxImpact(int termId) {
+        return this.buffer.getDouble(this.termEntry(termId) + 8);
+    }
+
+    @Override
+    public int getDocumentId(URI uri) {
+        String target = uri.toString();
+        int low = 0;
+        int high = this.documentCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int id = this.buffer.getInt(this.uriOrder + mid * 4);
+            int comparison = this.readSummaryString(id, 0).compareTo(target);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getDocumentLength(int documentId) {
+        return this.buffer.getInt(this.documentEntry(documentId) + 24);
+    }
+
+    @Override
+    public double getDocumentNorm(int documentId) {
+        return this.buffer.getDouble(this.documentEntry(documentId));
+    }
+
+    @Override
+    public double getPageRank(int documentId) {
+        return this.buffer.getDouble(this.documentEntry(documentId) + 8);
+    }
+
+    @Override
+    public double getDocumentFactor(int documentId) {
+        return this.buffer.getDouble(this.documentEntry(documentId) + 16);
+    }
+
+    @Override
+    public WebpageSummary getSummary(int documentId) {
+        return new WebpageSummary(
+                URI.create(this.readSummaryString(documentId, 0)),
+                this.readSummaryString(documentId, 1),
+                this.readSummaryString(documentId, 2));
+    }
+
+    private int termEntry(int termId) {
+        if (termId < 0 || termId >= this.termCount) {
+            throw new IndexOutOfBoundsException();
+        }
+        return this.termTable + termId * TERM_ENTRY_SIZE;
+    }
+
+    private int documentEntry(int documentId) {
+        if (documentId < 0 || documentId >= this.documentCount) {
+            throw new IndexOutOfBoundsException();
+        }
+        return this.documentTable + documentId * DOCUMENT_ENTRY_SIZE;
+    }
+
+    /**
+     * Returns the field-th string (0 = uri, 1 = title, 2 = blurb) of the given
+     * document's summary.
+     */
+    private String readSummaryString(int documentId, int field) {
+        if (documentId < 0 || documentId >= this.documentCount) {
+            throw new IndexOutOfBoundsException();
+        }
+        int position = this.summaryBytes + this.buffer.getInt(this.summaryOffsets + documentId * 4);
+        for (int i = 0; i < field; i++) {
+            position += 4 + this.buffer.getInt(position);
+        }
+        return this.readString(position + 4, this.buffer.getInt(position));
+    }
+
+    private String readString(int position, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = this.buffer.duplicate();
+        view.position(position);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a view of the given byte range of the file. We never move the
+     * position of 'buffer' itself, so views can be made from many threads at once.
+     */
+    private ByteBuffer slice(int position, int length) {
+        ByteBuffer view = this.buffer.duplicate();
+        view.position(position);
+        view.limit(position + length);
+        return view.slice();
+    }
+}
@@ -0,0 +1,167 @@
+package search.index;
+
+import datastructures.interfaces.IList;
+
+/**
+ * Finds the top-k documents for a query using the MaxScore dynamic pruning
+ * algorithm.
+ *
+ * The score of a document is the sum over every query word of
+ *
+ *     (query weight of the word) * (frequency of the word) * (document factor)
+ *
+ * where the document factor folds in everything about a document that does not
+ * depend on the query (for example, its norm and its page rank).
+ *
+ * Every word also comes with an upper bound on the score it can contribute to any
+ * single document. Words are sorted by that bound; once the sum of the bounds of
+ * the smallest words can no longer beat the worst score in our current top k, those
+ * words become "non-essential": documents containing only them are never looked at,
+ * and their postings are only consulted (by skipping ahead) for documents found via
+ * the remaining "essential" words.
+ *
+ * The result is the same set of documents an exhaustive search would return,
+ * modulo ties and floating point rounding.
+ */
+public class MaxScoreRetriever {
+    /**
+     * A single word of a query, as seen by the retriever.
+     */
+    private static class QueryTerm {
+        private final PostingList.Cursor cursor;
+        private final double weight;
+        private final double upperBound;
+
+        public QueryTerm(PostingList postings, double weight, double maxImpact) {
+            this.cursor = postings.cursor();
+            this.weight = weight;
+            this.upperBound = weight * maxImpact;
+        }
+    }
+
+    /**
+     * Returns the (at most) k best scoring documents of the given index, sorted
+     * from best to worst.
+     */
+    public static IList<ScoredDocument> findTopK(WeightedQuery query, SearchIndex index, int k) {
+        return findTopK(query, index, k, Double.NEGATIVE_INFINITY, 0, index.getDocumentCount(), Deadline.NONE);
+    }
+
+    /**
+     * Same as above, but only returns documents scoring more than 'minScore', with
+     * ids from 'start' up to (but not including) 'end'. When the caller already
+     * knows k documents scoring at least 'minScore', this skips far more documents
+     * than the plain version.
+     *
+     * If the deadline passes before we are done, returns the best documents among
+     * those with the smallest ids, which were looked at first.
+     */
+    public static IList<ScoredDocument> findTopK(WeightedQuery query, SearchIndex index, int k,
+                                                 double minScore, int start, int end, Deadline deadline) {
+        if (k < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        QueryTerm[] sorted = sortByUpperBound(query, index);
+        int numTerms = sorted.length;
+        for (QueryTerm term : sorted) {
+            term.cursor.advance(start);
+        }
+
+        // cumulativeBounds[i] is the most that words 0 through i can add to a score.
+        double[] cumulativeBounds = new double[numTerms];
+        double total = 0.0;
+        for (int i = 0; i < numTerms; i++) {
+            total += sorted[i].upperBound;
+            cumulativeBounds[i] = total;
+        }
+
+        // A document must score more than the threshold to get into our top k.
+        TopKCollector topK = new TopKCollector(k);
+        double threshold = minScore;
+        int firstEssential = 0;
+        while (firstEssential < numTerms && cumulativeBounds[firstEssential] <= threshold) {
+            firstEssential++;
+        }
+
+        int candidateCount = 0;
+        while (k > 0 && firstEssential < numTerms) {
+            // Step 1: the next candidate is the smallest document in any essential list
+            int candidate = PostingList.END;
+            for (int i = firstEssential; i < numTerms; i++) {
+                candidate = Math.min(candidate, sorted[i].cursor.document());
+            }
+            if (candidate >= end) {
+                break;
+            }
+            candidateCount++;
+            if (candidateCount % Deadline.CHECK_INTERVAL == 0 && deadline.hasPassed()) {
+                break;
+            }
+
+            // Step 2: score the candidate using the essential words
+            double factor = index.getDocumentFactor(candidate);
+            double score = 0.0;
+            for (int i = firstEssential; i < numTerms; i++) {
+                PostingList.Cursor cursor = sorted[i].cursor;
+                if (cursor.document() == candidate) {
+                    score += sorted[i].weight * cursor.frequency() * factor;
+                    cursor.next();
+                }
+            }
+            if (index.isDeleted(candidate)) {
+                continue;
+            }
+
+            // Step 3: add in the non-essential words, largest first, giving up as soon
+            // as even their combined upper bound cannot lift us past the threshold.
+            boolean pruned = false;
+            for (int i = firstEssential - 1; i >= 0; i--) {
+                if (score + cumulativeBounds[i] <= threshold) {
+                    pruned = true;
+                    break;
+                }
+                PostingList.Cursor cursor = sorted[i].cursor;
+                cursor.advance(candidate);
+                if (cursor.document() == candidate) {
+                    score += sorted[i].weight * cursor.frequency() * factor;
+                }
+            }
+
+            // Step 4: update the heap, the threshold, and the set of essential words
+            if (!pruned && score > threshold) {
+                topK.offer(candidate, score);
+                if (topK.isFull()) {
+                    threshold = topK.getThreshold();
+                    while (firstEssential < numTerms && cumulativeBounds[firstEssential] <= threshold) {
+                        firstEssential++;
+                    }
+                }
+            }
+        }
+
+        return topK.toList();
+    }
+
+    /**
+     * Returns the words of the query as an array sorted by increasing upper bound.
+     */
+    private static QueryTerm[] sortByUpperBound(WeightedQuery query, SearchIndex index) {
+        QueryTerm[] output = new QueryTerm[query.size()];
+        int size = 0;
+        for (int j = 0; j < query.size(); j++) {
+            int termId = query.getTermId(j);
+            QueryTerm term = new QueryTerm(
+                    index.getPostings(termId), query.getWeight(j), index.getMaxImpact(termId));
+            // Insertion sort: queries only ever have a handful of words.
+            int i = size;
+            while (i > 0 && output[i - 1].upperBound > term.upperBound) {
+                output[i] = output[i - 1];
+                i--;
+            }
+            output[i] = term;
+            size++;
+        }
+        return output;
+    }
+}
@@ -0,0 +1,332 @@
+package search.index;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An immutable, compressed posting list: the ids of every document containing
+ * some word, sorted in increasing order, along with the number of times the word
+ * appears in each of those documents (its frequency).
+ *
+ * Postings are stored in blocks of BLOCK_SIZE. Within a block, we store the gap
+ * between each document id and the previous one, followed by the frequencies,
+ * each as a variable-length integer (7 bits per byte, the high bit set on every
+ * byte but the last). Gaps and frequencies are almost always small, so most
+ * postings take two bytes instead of eight.
+ *
+ * The encoded list starts with a skip table holding, for every block, the id of
+ * its last document and the offset at which it ends. Cursors use it to jump over
+ * whole blocks without decoding them.
+ *
+ * The list is backed by a buffer so it can either wrap a plain array or point
+ * directly into a memory-mapped index file without copying.
+ */
+public class PostingList {
+    public static final int BLOCK_SIZE = 128;
+
+    /**
+     * The document id of a cursor that has moved past the end of its list. It is
+     * larger than every real document id.
+     */
+    public static final int END = Integer.MAX_VALUE;
+
+    private static final int SKIP_ENTRY_SIZE = 8;
+
+    private final ByteBuffer data;
+    // The array behind 'data' (and where in it 'data' starts), if it has one.
+    // Decoding straight from the array is several times faster than going
+    // through the buffer.
+    private final byte[] array;
+    private final int arrayOffset;
+    private final int size;
+    private final int blockCount;
+
+    private PostingList(ByteBuffer data, int size) {
+        this.data = data;
+        this.array = data.hasArray() ? data.array() : null;
+        this.arrayOffset = data.hasArray() ? data.arrayOffset() : 0;
+        this.size = size;
+        this.blockCount = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    /**
+     * Returns the posting list of the given size encoded in the remaining bytes of
+     * the given buffer, which must not be modified afterwards.
+     */
+    public static PostingList wrap(ByteBuffer data, int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Posting lists cannot have a negative size");
+        }
+        return new PostingList(data.slice(), size);
+    }
+
+    /**
+     * Returns the number of documents in this list.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of bytes this list takes up once encoded.
+     */
+    public int getByteSize() {
+        return this.data.limit();
+    }
+
+    /**
+     * Returns a read-only view of the encoded bytes of this list (see wrap()).
+     */
+    public ByteBuffer getEncoded() {
+        return this.data.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a new cursor positioned on the first document of this list.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    private int getLastDocument(int block) {
+        return this.data.getInt(block * SKIP_ENTRY_SIZE);
+    }
+
+    private int getBlockEnd(int block) {
+        return this.data.getInt(block * SKIP_ENTRY_SIZE + 4);
+    }
+
+    /**
+     * Walks through a posting list in increasing order of document id, decoding
+     * one block at a time. A cursor is not thread-safe, but any number of cursors
+     * may read the same list at once.
+     */
+    public class Cursor {
+        private final int[] documents;
+        private final int[] frequencies;
+        private int block;
+        private int blockLength;
+        private int index;
+        private int document;
+
+        private Cursor() {
+            this.documents = new int[Math.min(BLOCK_SIZE, size)];
+            this.frequencies = new int[this.documents.length];
+            if (size == 0) {
+                this.block = 0;
+                this.document = END;
+            } else {
+                this.decodeBlock(0);
+                this.document = this.documents[0];
+            }
+        }
+
+        /**
+         * Returns the id of the current document, or END if we are past the end of
+         * the list.
+         */
+        public int document() {
+            return this.document;
+        }
+
+        /**
+         * Returns the frequency of the word within the current document.
+         *
+         * Precondition: document() != END
+         */
+        public int frequency() {
+            return this.frequencies[this.index];
+        }
+
+        /**
+         * Moves to the next document of the list.
+         */
+        public void next() {
+            if (this.document == END) {
+                return;
+            }
+            this.index++;
+            if (this.index < this.blockLength) {
+                this.document = this.documents[this.index];
+            } else if (this.block + 1 < blockCount) {
+                this.decodeBlock(this.block + 1);
+                this.document = this.documents[0];
+            } else {
+                this.document = END;
+            }
+        }
+
+        /**
+         * Moves forward to the first document whose id is at least 'target'. Does
+         * nothing if the current document already is.
+         */
+        public void advance(int target) {
+            if (this.document >= target) {
+                return;
+            }
+            if (this.documents[this.blockLength - 1] < target) {
+                // Binary search the skip table for the first block that could hold
+                // the target.
+                int low = this.block + 1;
+                int high = blockCount;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (getLastDocument(mid) < target) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                if (low == blockCount) {
+                    this.index = this.blockLength;
+                    this.document = END;
+                    return;
+                }
+                this.decodeBlock(low);
+            }
+            // The last document of the current block is at least 'target', so this stops.
+            while (this.documents[this.index] < target) {
+                this.index++;
+            }
+            this.document = this.documents[this.index];
+        }
+
+        private void decodeBlock(int block) {
+            int position = block == 0 ? blockCount * SKIP_ENTRY_SIZE : getBlockEnd(block - 1);
+            int previous = block == 0 ? -1 : getLastDocument(block - 1);
+            int length = block == blockCount - 1 ? size - block * BLOCK_SIZE : BLOCK_SIZE;
+
+            if (array != null) {
+                position = decodeArray(array, arrayOffset + position, previous, true, this.documents, length);
+                decodeArray(array, position, 0, false, this.frequencies, length);
+            } else {
+                position = decodeBuffer(data, position, previous, true, this.documents, length);
+                decodeBuffer(data, position, 0, false, this.frequencies, length);
+            }
+
+            this.block = block;
+            this.blockLength = length;
+            this.index = 0;
+        }
+    }
+
+    /**
+     * Decodes 'length' variable-length integers starting at the given position
+     * into 'output'. If 'isDelta' is set, the integers are gaps, and we output
+     * their running sum starting from 'previous' instead. Returns the position
+     * right after the last integer.
+     */
+    private static int decodeArray(byte[] input, int position, int previous, boolean isDelta,
+                                   int[] output, int length) {
+        int sum = previous;
+        for (int i = 0; i < length; i++) {
+            int b = input[position++];
+            int value = b & 0x7F;
+            for (int shift = 7; b < 0; shift += 7) {
+                b = input[position++];
+                value |= (b & 0x7F) << shift;
+            }
+            sum = isDelta ? sum + value : value;
+            output[i] = sum;
+        }
+        return position;
+    }
+
+    /**
+     * Same as decodeArray, reading from a buffer instead.
+     */
+    private static int decodeBuffer(ByteBuffer input, int position, int previous, boolean isDelta,
+                                    int[] output, int length) {
+        int sum = previous;
+        for (int i = 0; i < length; i++) {
+            int b = input.get(position++);
+            int value = b & 0x7F;
+            for (int shift = 7; b < 0; shift += 7) {
+                b = input.get(position++);
+                value |= (b & 0x7F) << shift;
+            }
+            sum = isDelta ? sum + value : value;
+            output[i] = sum;
+        }
+        return position;
+    }
+
+    /**
+     * Builds a posting list one document at a time.
+     */
+    public static class Builder {
+        private int[] documents;
+        private int[] frequencies;
+        private int size;
+
+        public Builder() {
+            this.documents = new int[4];
+            this.frequencies = new int[4];
+            this.size = 0;
+        }
+
+        /**
+         * Appends the given document to the end of the list.
+         *
+         * @throws IllegalArgumentException  if the id is not larger than the previous
+         *                                   one, or the frequency is not positive
+         */
+        public Builder add(int document, int frequency) {
+            if (document < 0 || document == END
+                    || (this.size > 0 && this.documents[this.size - 1] >= document)) {
+                throw new IllegalArgumentException("Documents must be added in increasing order of id");
+            }
+            if (frequency <= 0) {
+                throw new IllegalArgumentException("Frequencies must be positive");
+            }
+            if (this.size == this.documents.length) {
+                this.documents = Arrays.copyOf(this.documents, this.size * 2);
+                this.frequencies = Arrays.copyOf(this.frequencies, this.size * 2);
+            }
+            this.documents[this.size] = document;
+            this.frequencies[this.size] = frequency;
+            this.size++;
+            return this;
+        }
+
+        /**
+         * Returns the number of documents added so far.
+         */
+        public int size() {
+            return this.size;
+        }
+
+        public PostingList build() {
+            int blockCount = (this.size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            // Every integer takes at most 5 bytes.
+            ByteBuffer output = ByteBuffer.allocate(blockCount * SKIP_ENTRY_SIZE + this.size * 10);
+            output.position(blockCount * SKIP_ENTRY_SIZE);
+
+            int previous = -1;
+            for (int block = 0; block < blockCount; block++) {
+                int start = block * BLOCK_SIZE;
+                int end = Math.min(start + BLOCK_SIZE, this.size);
+                for (int i = start; i < end; i++) {
+                    writeVariableLength(output, this.documents[i] - previous);
+                    previous = this.documents[i];
+                }
+                for (int i = start; i < end; i++) {
+                    writeVariableLength(output, this.frequencies[i]);
+                }
+                output.putInt(block * SKIP_ENTRY_SIZE, previous);
+                output.putInt(block * SKIP_ENTRY_SIZE + 4, output.position());
+            }
+
+            byte[] bytes = Arrays.copyOf(output.array(), output.position());
+            return new PostingList(ByteBuffer.wrap(bytes), this.size);
+        }
+
+        private static void writeVariableLength(ByteBuffer output, int value) {
+            while ((value & ~0x7F) != 0) {
+                output.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            output.put((byte) value);
+        }
+    }
+}
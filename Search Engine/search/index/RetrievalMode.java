@@ -0,0 +1,24 @@
+package search.index;
+
+/**
+ * The strategies a search engine can use to find the top-k documents for a query.
+ */
+public enum RetrievalMode {
+    /**
+     * Scores every document that contains at least one query word, then keeps the best k.
+     */
+    EXHAUSTIVE,
+
+    /**
+     * Uses per-word upper bounds to skip documents that provably cannot make
+     * it into the top k (see MaxScoreRetriever).
+     */
+    MAX_SCORE,
+
+    /**
+     * Like MAX_SCORE, but searches the pages with the highest page rank first, and
+     * the others only if they could still make it into the top k (see
+     * TieredRetriever).
+     */
+    TIERED
+}
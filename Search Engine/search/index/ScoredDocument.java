@@ -0,0 +1,30 @@
+package search.index;
+
+/**
+ * A document id paired with the score it received for some query.
+ */
+public class ScoredDocument implements Comparable<ScoredDocument> {
+    private final int document;
+    private final double score;
+
+    public ScoredDocument(int document, double score) {
+        this.document = document;
+        this.score = score;
+    }
+
+    public int getDocument() {
+        return this.document;
+    }
+
+    public double getScore() {
+        return this.score;
+    }
+
+    /**
+     * Compares two scored documents by their score.
+     */
+    @Override
+    public int compareTo(ScoredDocument other) {
+        return Double.compare(this.score, other.score);
+    }
+}
@@ -0,0 +1,102 @@
+package search.index;
+
+import search.models.WebpageSummary;
+
+import java.net.URI;
+
+/**
+ * Everything a search engine needs to answer queries: the words and documents
+ * that were indexed, the posting list of every word, and the per-document
+ * scores that do not depend on the query.
+ *
+ * The relevance of a document to a query is the cosine similarity of their TF-IDF
+ * vectors. Posting lists store the number of times a word appears in each document;
+ * dividing by the document's length (to get the TF score) is folded into the
+ * document factor, and the IDF score is applied to the query instead (see
+ * WeightedQuery), which lets the IDF scores change without rewriting any posting
+ * lists.
+ *
+ * Words and documents are referred to by dense ids starting at 0. Implementations
+ * must be safe to query from many threads at once.
+ */
+public interface SearchIndex {
+    /**
+     * Returns the number of documents. Document ids range from 0 up to (but
+     * not including) this number.
+     */
+    int getDocumentCount();
+
+    /**
+     * Returns the number of distinct words. Term ids range from 0 up to (but
+     * not including) this number.
+     */
+    int getTermCount();
+
+    /**
+     * Returns the word with the given term id.
+     */
+    String getTerm(int termId);
+
+    /**
+     * Returns the term id of the given word, or -1 if no document contains it.
+     */
+    int getTermId(String word);
+
+    /**
+     * Returns the IDF score of the word with the given term id, as of when this
+     * index was built.
+     */
+    double getIdf(int termId);
+
+    /**
+     * Returns the posting list of the word with the given term id.
+     */
+    PostingList getPostings(int termId);
+
+    /**
+     * Returns the largest (frequency of the word) * (document factor) across every
+     * document containing the word with the given term id.
+     */
+    double getMaxImpact(int termId);
+
+    /**
+     * Returns the id of the document with the given URI, or -1 if there is none.
+     */
+    int getDocumentId(URI uri);
+
+    /**
+     * Returns the number of words in the given document.
+     */
+    int getDocumentLength(int documentId);
+
+    /**
+     * Returns the norm of the TF-IDF vector of the given document.
+     */
+    double getDocumentNorm(int documentId);
+
+    /**
+     * Returns the page rank of the given document.
+     */
+    double getPageRank(int documentId);
+
+    /**
+     * Returns sqrt(page rank) / (length * norm of the TF-IDF vector) of the given
+     * document, or zero if its vector is empty. A document's score for a query is
+     * the sum over the query words of (query weight) * (frequency of the word in
+     * the document), multiplied by this factor.
+     */
+    double getDocumentFactor(int documentId);
+
+    /**
+     * Returns 'true' if the given document has been deleted and must be left out
+     * of search results.
+     */
+    default boolean isDeleted(int documentId) {
+        return false;
+    }
+
+    /**
+     * Returns the summary of the given document.
+     */
+    WebpageSummary getSummary(int documentId);
+}
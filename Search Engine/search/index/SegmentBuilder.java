@@ -0,0 +1,142 @@
+package search.index;
+
+import datastructures.concrete.KVPair;
+import datastructures.concrete.dictionaries.ChainedHashDictionary;
+import datastructures.interfaces.IDictionary;
+import search.models.Webpage;
+import search.models.WebpageSummary;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Builds a small in-memory index segment one page at a time. LiveIndex uses this
+ * to hold pages added since the last time its buffer was flushed.
+ *
+ * Posting lists only store word counts, so pages can be added without knowing
+ * any IDF scores; those are only needed (to compute document norms) by build().
+ */
+public class SegmentBuilder {
+    private final IdRegistry<String> terms;
+    private final IdRegistry<URI> documents;
+    private PostingList.Builder[] postings;
+    private int[] lengths;
+    private double[] pageRanks;
+    private WebpageSummary[] summaries;
+
+    public SegmentBuilder() {
+        this.terms = new IdRegistry<>();
+        this.documents = new IdRegistry<>();
+        this.postings = new PostingList.Builder[16];
+        this.lengths = new int[16];
+        this.pageRanks = new double[16];
+        this.summaries = new WebpageSummary[16];
+    }
+
+    /**
+     * Adds the given page, with the given page rank, to this segment.
+     *
+     * @throws IllegalArgumentException  if a page with the same uri was already added
+     */
+    public void add(Webpage page, double pageRank) {
+        URI uri = page.getUri();
+        if (this.documents.contains(uri)) {
+            throw new IllegalArgumentException("Page '" + uri + "' was already added");
+        }
+        int id = this.documents.register(uri);
+        if (id == this.pageRanks.length) {
+            this.lengths = Arrays.copyOf(this.lengths, id * 2);
+            this.pageRanks = Arrays.copyOf(this.pageRanks, id * 2);
+            this.summaries = Arrays.copyOf(this.summaries, id * 2);
+        }
+        this.lengths[id] = page.getWords().size();
+        this.pageRanks[id] = pageRank;
+        this.summaries[id] = page.getSummary();
+
+        IDictionary<String, Integer> counts = new ChainedHashDictionary<>();
+        for (String word : page.getWords()) {
+            counts.put(word, counts.getOrDefault(word, 0) + 1);
+        }
+        for (KVPair<String, Integer> pair : counts) {
+            int termId = this.terms.register(pair.getKey());
+            if (termId == this.postings.length) {
+                this.postings = Arrays.copyOf(this.postings, termId * 2);
+            }
+            if (this.postings[termId] == null) {
+                this.postings[termId] = new PostingList.Builder();
+            }
+            this.postings[termId].add(id, pair.getValue());
+        }
+    }
+
+    /**
+     * Returns the number of pages added so far.
+     */
+    public int size() {
+        return this.documents.size();
+    }
+
+    /**
+     * Returns the number of pages added so far that contain the given word.
+     */
+    public int getDocumentFrequency(String word) {
+        int termId = this.terms.getIdOrDefault(word);
+        return termId < 0 ? 0 : this.postings[termId].size();
+    }
+
+    /**
+     * Returns an index of every page added so far, computing document norms with
+     * the given IDF scores. The index shares state with this builder, which must
+     * not be used afterwards.
+     */
+    public InMemoryIndex build(ToDoubleFunction<String> idfScores) {
+        int termCount = this.terms.size();
+        int documentCount = this.documents.size();
+
+        double[] idfs = new double[termCount];
+        PostingList[] lists = new PostingList[termCount];
+        int[] lengths = Arrays.copyOf(this.lengths, documentCount);
+        double[] squaredNorms = new double[documentCount];
+        for (int termId = 0; termId < termCount; termId++) {
+            idfs[termId] = idfScores.applyAsDouble(this.terms.getItem(termId));
+            lists[termId] = this.postings[termId].build();
+            addSquaredWeights(lists[termId], idfs[termId], lengths, squaredNorms);
+        }
+
+        double[] norms = new double[documentCount];
+        double[] factors = new double[documentCount];
+        for (int id = 0; id < documentCount; id++) {
+            norms[id] = Math.sqrt(squaredNorms[id]);
+            factors[id] = computeDocumentFactor(lengths[id], norms[id], this.pageRanks[id]);
+        }
+
+        return new InMemoryIndex(
+                this.terms, idfs, lists, this.documents, lengths, norms,
+                Arrays.copyOf(this.pageRanks, documentCount), factors,
+                Arrays.copyOf(this.summaries, documentCount));
+    }
+
+    /**
+     * Adds (TF-IDF score)^2 of every posting in the given list to the running
+     * squared norm of its document.
+     */
+    static void addSquaredWeights(PostingList list, double idf, int[] lengths, double[] squaredNorms) {
+        PostingList.Cursor cursor = list.cursor();
+        while (cursor.document() != PostingList.END) {
+            int id = cursor.document();
+            double tfIdf = cursor.frequency() / (double) lengths[id] * idf;
+            squaredNorms[id] += tfIdf * tfIdf;
+            cursor.next();
+        }
+    }
+
+    /**
+     * Returns the document factor (see SearchIndex.getDocumentFactor) of a document
+     * with the given length, norm and page rank.
+     */
+    static double computeDocumentFactor(int length, double norm, double pageRank) {
+        // A document with an empty vector always has a relevance of zero.
+        return norm == 0 ? 0.0 : Math.sqrt(pageRank) / (length * norm);
+    }
+}
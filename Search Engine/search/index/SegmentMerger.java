@@ -0,0 +1,107 @@
+package search.index;
+
+import datastructures.interfaces.IList;
+import search.models.WebpageSummary;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Merges several index segments into one, dropping deleted documents.
+ */
+public class SegmentMerger {
+    /**
+     * Returns a single in-memory segment holding every document of the given
+     * segments that is not deleted, computing document norms with the given IDF
+     * scores.
+     *
+     * Documents keep their relative order: those of the first segment come first,
+     * and so on.
+     */
+    public static InMemoryIndex merge(IList<? extends SearchIndex> segments, ToDoubleFunction<String> idfScores) {
+        IdRegistry<URI> documents = new IdRegistry<>();
+        int capacity = 0;
+        for (SearchIndex segment : segments) {
+            capacity += segment.getDocumentCount();
+        }
+        int[] lengths = new int[capacity];
+        double[] pageRanks = new double[capacity];
+        WebpageSummary[] summaries = new WebpageSummary[capacity];
+
+        // newIds[s][id] is the id of document 'id' of segment 's' in the merged
+        // segment, or -1 if it was deleted.
+        int[][] newIds = new int[segments.size()][];
+        int s = 0;
+        for (SearchIndex segment : segments) {
+            newIds[s] = new int[segment.getDocumentCount()];
+            for (int id = 0; id < newIds[s].length; id++) {
+                if (segment.isDeleted(id)) {
+                    newIds[s][id] = -1;
+                } else {
+                    WebpageSummary summary = segment.getSummary(id);
+                    int newId = documents.register(summary.getUri());
+                    lengths[newId] = segment.getDocumentLength(id);
+                    pageRanks[newId] = segment.getPageRank(id);
+                    summaries[newId] = summary;
+                    newIds[s][id] = newId;
+                }
+            }
+            s++;
+        }
+
+        // Concatenate the posting lists of every word. Since we visit the segments
+        // in order, and ids were handed out in that same order, each list stays sorted.
+        IdRegistry<String> terms = new IdRegistry<>();
+        PostingList.Builder[] builders = new PostingList.Builder[16];
+        s = 0;
+        for (SearchIndex segment : segments) {
+            for (int termId = 0; termId < segment.getTermCount(); termId++) {
+                PostingList.Cursor cursor = segment.getPostings(termId).cursor();
+                PostingList.Builder builder = null;
+                while (cursor.document() != PostingList.END) {
+                    int newId = newIds[s][cursor.document()];
+                    if (newId >= 0) {
+                        if (builder == null) {
+                            // Only register words with at least one live document.
+                            int newTermId = terms.register(segment.getTerm(termId));
+                            if (newTermId == builders.length) {
+                                builders = Arrays.copyOf(builders, newTermId * 2);
+                            }
+                            if (builders[newTermId] == null) {
+                                builders[newTermId] = new PostingList.Builder();
+                            }
+                            builder = builders[newTermId];
+                        }
+                        builder.add(newId, cursor.frequency());
+                    }
+                    cursor.next();
+                }
+            }
+            s++;
+        }
+
+        int documentCount = documents.size();
+        lengths = Arrays.copyOf(lengths, documentCount);
+        double[] idfs = new double[terms.size()];
+        PostingList[] postings = new PostingList[terms.size()];
+        double[] squaredNorms = new double[documentCount];
+        for (int termId = 0; termId < postings.length; termId++) {
+            idfs[termId] = idfScores.applyAsDouble(terms.getItem(termId));
+            postings[termId] = builders[termId].build();
+            SegmentBuilder.addSquaredWeights(postings[termId], idfs[termId], lengths, squaredNorms);
+        }
+
+        double[] norms = new double[documentCount];
+        double[] factors = new double[documentCount];
+        for (int id = 0; id < documentCount; id++) {
+            norms[id] = Math.sqrt(squaredNorms[id]);
+            factors[id] = SegmentBuilder.computeDocumentFactor(lengths[id], norms[id], pageRanks[id]);
+        }
+
+        return new InMemoryIndex(
+                terms, idfs, postings, documents, lengths, norms,
+                Arrays.copyOf(pageRanks, documentCount), factors,
+                Arrays.copyOf(summaries, documentCount));
+    }
+}
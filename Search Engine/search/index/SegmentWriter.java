@@ -0,0 +1,180 @@
+package search.index;
+
+import search.models.WebpageSummary;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes a search index to disk in the format read by MappedSegment.
+ */
+public class SegmentWriter {
+    /**
+     * Writes the given index to the given file, replacing it if it already exists.
+     *
+     * The segment is first written to a temporary file next to the destination and
+     * then moved into place, so a crash never leaves behind a half-written segment.
+     */
+    public static void write(SearchIndex index, Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        int[] header = new int[MappedSegment.HEADER_SIZE / 4];
+        header[0] = MappedSegment.MAGIC;
+        header[1] = MappedSegment.VERSION;
+        header[2] = index.getDocumentCount();
+        header[3] = index.getTermCount();
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            // Leave room for the header; we fill it in once we know where each section starts.
+            out.write(new byte[MappedSegment.HEADER_SIZE]);
+
+            Integer[] termOrder = sortTerms(index);
+            byte[][] terms = new byte[termOrder.length][];
+            for (int i = 0; i < termOrder.length; i++) {
+                terms[i] = index.getTerm(termOrder[i]).getBytes(StandardCharsets.UTF_8);
+            }
+
+            header[MappedSegment.HEADER_TERM_OFFSETS / 4] = align(out);
+            writeOffsets(out, terms);
+
+            header[MappedSegment.HEADER_TERM_BYTES / 4] = align(out);
+            for (byte[] term : terms) {
+                out.write(term);
+            }
+
+            header[MappedSegment.HEADER_TERM_TABLE / 4] = align(out);
+            int start = 0;
+            for (int termId : termOrder) {
+                PostingList postings = index.getPostings(termId);
+                out.writeDouble(index.getIdf(termId));
+                out.writeDouble(index.getMaxImpact(termId));
+                out.writeInt(start);
+                out.writeInt(postings.size());
+                out.writeInt(postings.getByteSize());
+                out.writeInt(0);
+                start += postings.getByteSize();
+            }
+
+            header[MappedSegment.HEADER_POSTINGS / 4] = align(out);
+            for (int termId : termOrder) {
+                ByteBuffer encoded = index.getPostings(termId).getEncoded();
+                byte[] bytes = new byte[encoded.remaining()];
+                encoded.get(bytes);
+                out.write(bytes);
+            }
+
+            header[MappedSegment.HEADER_DOCUMENT_TABLE / 4] = align(out);
+            for (int id = 0; id < index.getDocumentCount(); id++) {
+                out.writeDouble(index.getDocumentNorm(id));
+                out.writeDouble(index.getPageRank(id));
+                out.writeDouble(index.getDocumentFactor(id));
+                out.writeInt(index.getDocumentLength(id));
+                out.writeInt(0);
+            }
+
+            byte[][] summaries = new byte[index.getDocumentCount()][];
+            for (int id = 0; id < summaries.length; id++) {
+                summaries[id] = encodeSummary(index.getSummary(id));
+            }
+
+            header[MappedSegment.HEADER_SUMMARY_OFFSETS / 4] = align(out);
+            writeOffsets(out, summaries);
+
+            header[MappedSegment.HEADER_SUMMARY_BYTES / 4] = align(out);
+            for (byte[] summary : summaries) {
+                out.write(summary);
+            }
+
+            header[MappedSegment.HEADER_URI_ORDER / 4] = align(out);
+            for (int id : sortDocumentsByUri(index)) {
+                out.writeInt(id);
+            }
+
+            // DataOutputStream.size() sticks at Integer.MAX_VALUE once it overflows.
+            if (out.size() == Integer.MAX_VALUE) {
+                throw new IOException("Index segments larger than 2GB are not supported");
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            ByteBuffer headerBytes = ByteBuffer.allocate(MappedSegment.HEADER_SIZE);
+            headerBytes.asIntBuffer().put(header);
+            channel.write(headerBytes, 0);
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Pads the output with zeros up to the next multiple of 8 and returns the
+     * resulting position.
+     */
+    private static int align(DataOutputStream out) throws IOException {
+        while (out.size() % 8 != 0) {
+            out.writeByte(0);
+        }
+        return out.size();
+    }
+
+    /**
+     * Writes the offset at which each of the given byte strings will start if they
+     * are written one after another, followed by the total length.
+     */
+    private static void writeOffsets(DataOutputStream out, byte[][] items) throws IOException {
+        int offset = 0;
+        for (byte[] item : items) {
+            out.writeInt(offset);
+            offset += item.length;
+        }
+        out.writeInt(offset);
+    }
+
+    private static byte[] encodeSummary(WebpageSummary summary) {
+        byte[][] fields = new byte[][] {
+                summary.getUri().toString().getBytes(StandardCharsets.UTF_8),
+                summary.getTitle().getBytes(StandardCharsets.UTF_8),
+                summary.getBlurb().getBytes(StandardCharsets.UTF_8),
+        };
+        ByteBuffer output = ByteBuffer.allocate(12 + fields[0].length + fields[1].length + fields[2].length);
+        for (byte[] field : fields) {
+            output.putInt(field.length);
+            output.put(field);
+        }
+        return output.array();
+    }
+
+    /**
+     * Returns every term id of the index, sorted by the word it stands for.
+     */
+    private static Integer[] sortTerms(SearchIndex index) {
+        Integer[] output = new Integer[index.getTermCount()];
+        for (int i = 0; i < output.length; i++) {
+            output[i] = i;
+        }
+        Arrays.sort(output, (a, b) -> index.getTerm(a).compareTo(index.getTerm(b)));
+        return output;
+    }
+
+    /**
+     * Returns every document id of the index, sorted by the document's uri.
+     */
+    private static Integer[] sortDocumentsByUri(SearchIndex index) {
+        String[] uris = new String[index.getDocumentCount()];
+        Integer[] output = new Integer[uris.length];
+        for (int i = 0; i < output.length; i++) {
+            uris[i] = index.getSummary(i).getUri().toString();
+            output[i] = i;
+        }
+        Arrays.sort(output, (a, b) -> uris[a].compareTo(uris[b]));
+        return output;
+    }
+}
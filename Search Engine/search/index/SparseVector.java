@@ -0,0 +1,86 @@
+package search.index;
+
+import java.util.Arrays;
+
+/**
+ * An immutable sparse vector: the indices of its non-zero entries, sorted in
+ * increasing order, and the value stored at each of them.
+ */
+public class SparseVector {
+    private final int[] indices;
+    private final float[] values;
+
+    private SparseVector(int[] indices, float[] values) {
+        this.indices = indices;
+        this.values = values;
+    }
+
+    /**
+     * Returns a vector containing the given entries, which may be in any order.
+     *
+     * @throws IllegalArgumentException  if the arrays differ in length or an index is repeated
+     */
+    public static SparseVector of(int[] indices, float[] values) {
+        if (indices.length != values.length) {
+            throw new IllegalArgumentException("Every index needs exactly one value");
+        }
+
+        // Sort both arrays together by packing (index, position) into one long.
+        long[] order = new long[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            order[i] = ((long) indices[i] << 32) | i;
+        }
+        Arrays.sort(order);
+
+        int[] sortedIndices = new int[indices.length];
+        float[] sortedValues = new float[indices.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedIndices[i] = (int) (order[i] >>> 32);
+            sortedValues[i] = values[(int) order[i]];
+            if (i > 0 && sortedIndices[i] == sortedIndices[i - 1]) {
+                throw new IllegalArgumentException("Index " + sortedIndices[i] + " is repeated");
+            }
+        }
+        return new SparseVector(sortedIndices, sortedValues);
+    }
+
+    /**
+     * Returns the number of non-zero entries in this vector.
+     */
+    public int size() {
+        return this.indices.length;
+    }
+
+    /**
+     * Returns the index of the i-th non-zero entry.
+     */
+    public int getIndex(int i) {
+        return this.indices[i];
+    }
+
+    /**
+     * Returns the value of the i-th non-zero entry.
+     */
+    public float getValue(int i) {
+        return this.values[i];
+    }
+
+    /**
+     * Returns the value stored at the given index, or zero if there is none.
+     */
+    public float get(int index) {
+        int position = Arrays.binarySearch(this.indices, index);
+        return position >= 0 ? this.values[position] : 0.0f;
+    }
+
+    /**
+     * Returns the euclidean norm of this vector.
+     */
+    public double norm() {
+        double output = 0.0;
+        for (float value : this.values) {
+            output += (double) value * value;
+        }
+        return Math.sqrt(output);
+    }
+}
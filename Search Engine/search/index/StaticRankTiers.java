@@ -0,0 +1,221 @@
+package search.index;
+
+import search.models.WebpageSummary;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Splits the documents of an index segment into two tiers by static rank, the part
+ * of their score that does not depend on the query: sqrt(page rank). The first
+ * tier holds the documents with the highest static rank, the second tier all the
+ * others.
+ *
+ * Every word gets a posting list and a max impact (see SearchIndex.getMaxImpact)
+ * per tier, so each tier can be searched as an index of its own (see getTier()),
+ * in which the documents of the other tier do not exist. Documents keep their ids.
+ * See TieredRetriever.
+ *
+ * The posting lists of a word are only split the first time a query uses it, so
+ * only the words people search for take up twice the space.
+ */
+public class StaticRankTiers {
+    public static final double DEFAULT_FIRST_TIER_FRACTION = 0.1;
+
+    /**
+     * The posting lists of a word, split by tier.
+     */
+    private static class SplitPostings {
+        private final PostingList[] postings;
+        private final double[] maxImpacts;
+
+        public SplitPostings(PostingList[] postings, double[] maxImpacts) {
+            this.postings = postings;
+            this.maxImpacts = maxImpacts;
+        }
+    }
+
+    private final SearchIndex segment;
+    private final double firstTierFraction;
+    // Which documents are in the first tier, or null until someone asks.
+    private BitSet firstTier;
+    private final AtomicReferenceArray<SplitPostings> splits;
+
+    /**
+     * Splits the given segment, putting the given fraction of its documents (those
+     * with the highest page rank) in the first tier.
+     */
+    public StaticRankTiers(SearchIndex segment, double firstTierFraction) {
+        if (firstTierFraction < 0.0 || firstTierFraction > 1.0) {
+            throw new IllegalArgumentException("The fraction of documents in the first tier must be between 0 and 1");
+        }
+        this.segment = segment;
+        this.firstTierFraction = firstTierFraction;
+        this.firstTier = null;
+        this.splits = new AtomicReferenceArray<>(segment.getTermCount());
+    }
+
+    public StaticRankTiers(SearchIndex segment) {
+        this(segment, DEFAULT_FIRST_TIER_FRACTION);
+    }
+
+    /**
+     * Returns the documents of the first tier. Since sqrt() preserves order, those
+     * are the documents with the highest page ranks; documents tied with the
+     * lowest of them are in the first tier too.
+     */
+    private synchronized BitSet getFirstTier() {
+        if (this.firstTier == null) {
+            int documentCount = this.segment.getDocumentCount();
+            int size = (int) Math.ceil(this.firstTierFraction * documentCount);
+            BitSet output = new BitSet(documentCount);
+            if (size > 0) {
+                double[] pageRanks = new double[documentCount];
+                for (int id = 0; id < documentCount; id++) {
+                    pageRanks[id] = this.segment.getPageRank(id);
+                }
+                double[] sorted = pageRanks.clone();
+                Arrays.sort(sorted);
+                double threshold = sorted[documentCount - size];
+                for (int id = 0; id < documentCount; id++) {
+                    if (pageRanks[id] >= threshold) {
+                        output.set(id);
+                    }
+                }
+            }
+            this.firstTier = output;
+        }
+        return this.firstTier;
+    }
+
+    /**
+     * Returns the posting lists of the given word split by tier, splitting them if
+     * no query used the word before. Two threads may both split the same lists;
+     * only one of the results is kept.
+     */
+    private SplitPostings getSplit(int termId) {
+        SplitPostings split = this.splits.get(termId);
+        if (split != null) {
+            return split;
+        }
+        BitSet firstTier = this.getFirstTier();
+        PostingList.Builder[] builders = {new PostingList.Builder(), new PostingList.Builder()};
+        double[] maxImpacts = new double[2];
+        PostingList.Cursor cursor = this.segment.getPostings(termId).cursor();
+        while (cursor.document() != PostingList.END) {
+            int tier = firstTier.get(cursor.document()) ? 0 : 1;
+            builders[tier].add(cursor.document(), cursor.frequency());
+            maxImpacts[tier] = Math.max(maxImpacts[tier],
+                    cursor.frequency() * this.segment.getDocumentFactor(cursor.document()));
+            cursor.next();
+        }
+        split = new SplitPostings(new PostingList[] {builders[0].build(), builders[1].build()}, maxImpacts);
+        this.splits.compareAndSet(termId, null, split);
+        return this.splits.get(termId);
+    }
+
+    /**
+     * Returns the largest (frequency of the word) * (document factor) across every
+     * document of the second tier containing the word with the given term id.
+     */
+    public double getSecondTierMaxImpact(int termId) {
+        return this.getSplit(termId).maxImpacts[1];
+    }
+
+    /**
+     * Returns the given tier (0 for the first, 1 for the second) of the given view
+     * of the segment, which may leave out deleted documents (see LiveSegment).
+     */
+    public SearchIndex getTier(SearchIndex view, int tier) {
+        if (tier != 0 && tier != 1) {
+            throw new IllegalArgumentException("There are only two tiers");
+        }
+        return new Tier(view, tier);
+    }
+
+    /**
+     * A view of one tier of the segment: the same documents and words, but only the
+     * postings of documents in the tier.
+     */
+    private class Tier implements SearchIndex {
+        private final SearchIndex view;
+        private final int tier;
+
+        public Tier(SearchIndex view, int tier) {
+            this.view = view;
+            this.tier = tier;
+        }
+
+        @Override
+        public boolean isDeleted(int documentId) {
+            return this.view.isDeleted(documentId);
+        }
+
+        @Override
+        public int getDocumentCount() {
+            return this.view.getDocumentCount();
+        }
+
+        @Override
+        public int getTermCount() {
+            return this.view.getTermCount();
+        }
+
+        @Override
+        public String getTerm(int termId) {
+            return this.view.getTerm(termId);
+        }
+
+        @Override
+        public int getTermId(String word) {
+            return this.view.getTermId(word);
+        }
+
+        @Override
+        public double getIdf(int termId) {
+            return this.view.getIdf(termId);
+        }
+
+        @Override
+        public PostingList getPostings(int termId) {
+            return StaticRankTiers.this.getSplit(termId).postings[this.tier];
+        }
+
+        @Override
+        public double getMaxImpact(int termId) {
+            return StaticRankTiers.this.getSplit(termId).maxImpacts[this.tier];
+        }
+
+        @Override
+        public int getDocumentId(URI uri) {
+            return this.view.getDocumentId(uri);
+        }
+
+        @Override
+        public int getDocumentLength(int documentId) {
+            return this.view.getDocumentLength(documentId);
+        }
+
+        @Override
+        public double getDocumentNorm(int documentId) {
+            return this.view.getDocumentNorm(documentId);
+        }
+
+        @Override
+        public double getPageRank(int documentId) {
+            return this.view.getPageRank(documentId);
+        }
+
+        @Override
+        public double getDocumentFactor(int documentId) {
+            return this.view.getDocumentFactor(documentId);
+        }
+
+        @Override
+        public WebpageSummary getSummary(int documentId) {
+            return this.view.getSummary(documentId);
+        }
+    }
+}
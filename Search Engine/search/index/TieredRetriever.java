@@ -0,0 +1,90 @@
+package search.index;
+
+import datastructures.concrete.DoubleLinkedList;
+import datastructures.interfaces.IList;
+
+import java.util.Iterator;
+
+/**
+ * Finds the top-k documents for a query by searching the documents with the
+ * highest static rank first (see StaticRankTiers), and the others only when
+ * needed.
+ *
+ * Most of the best results of a query come from the small fraction of pages with
+ * a high page rank. So we first find the top k of the first tier alone (using
+ * MaxScoreRetriever). No document of the second tier can score more than the sum
+ * over the query words of (query weight) * (max impact of the word in the second
+ * tier); if we found k documents and the worst of them scores at least that much,
+ * the second tier cannot change the result, and we never look at it. Otherwise, we
+ * find the top k of the second tier too, and keep the best k of both. Only second
+ * tier documents beating the worst of the first tier's top k matter, which lets
+ * MaxScore skip most of them.
+ *
+ * Either way, the result is the same set of documents a search of the whole
+ * segment would return, modulo ties and floating point rounding.
+ *
+ * This order also makes the most of a deadline: if it passes before we are done,
+ * what we have is the top k of the pages with the highest page rank, plus
+ * whatever part of the second tier we got to.
+ */
+public class TieredRetriever {
+    /**
+     * Returns the (at most) k best scoring documents of the given segment, sorted
+     * from best to worst.
+     */
+    public static IList<ScoredDocument> findTopK(WeightedQuery query, LiveSegment segment, int k) {
+        return findTopK(query, segment, k, 0, segment.getDocumentCount(), Deadline.NONE);
+    }
+
+    /**
+     * Same as above, but only considers the documents with ids from 'start' up to
+     * (but not including) 'end', and stops early if the deadline passes.
+     */
+    public static IList<ScoredDocument> findTopK(WeightedQuery query, LiveSegment segment, int k,
+                                                 int start, int end, Deadline deadline) {
+        if (k < 0) {
+            throw new IllegalArgumentException();
+        }
+        StaticRankTiers tiers = segment.getTiers();
+        IList<ScoredDocument> firstHits = MaxScoreRetriever.findTopK(
+                query, tiers.getTier(segment, 0), k, Double.NEGATIVE_INFINITY, start, end, deadline);
+
+        // The score to beat: that of the worst of the first tier's top k, if it is full.
+        double minScore = firstHits.size() == k && k > 0
+                ? firstHits.get(k - 1).getScore()
+                : Double.NEGATIVE_INFINITY;
+        double secondTierBound = 0.0;
+        for (int i = 0; i < query.size(); i++) {
+            secondTierBound += query.getWeight(i) * tiers.getSecondTierMaxImpact(query.getTermId(i));
+        }
+        if (k == 0 || minScore >= secondTierBound || deadline.hasPassed()) {
+            return firstHits;
+        }
+
+        IList<ScoredDocument> secondHits = MaxScoreRetriever.findTopK(
+                query, tiers.getTier(segment, 1), k, minScore, start, end, deadline);
+        return merge(firstHits, secondHits, k);
+    }
+
+    /**
+     * Returns the (at most) k best documents of the two given lists, which must be
+     * sorted from best to worst, sorted the same way. Ties go to the first list.
+     */
+    private static IList<ScoredDocument> merge(IList<ScoredDocument> first, IList<ScoredDocument> second, int k) {
+        IList<ScoredDocument> output = new DoubleLinkedList<>();
+        Iterator<ScoredDocument> firstIterator = first.iterator();
+        Iterator<ScoredDocument> secondIterator = second.iterator();
+        ScoredDocument nextFirst = firstIterator.hasNext() ? firstIterator.next() : null;
+        ScoredDocument nextSecond = secondIterator.hasNext() ? secondIterator.next() : null;
+        while (output.size() < k && (nextFirst != null || nextSecond != null)) {
+            if (nextSecond == null || (nextFirst != null && nextFirst.getScore() >= nextSecond.getScore())) {
+                output.add(nextFirst);
+                nextFirst = firstIterator.hasNext() ? firstIterator.next() : null;
+            } else {
+                output.add(nextSecond);
+                nextSecond = secondIterator.hasNext() ? secondIterator.next() : null;
+            }
+        }
+        return output;
+    }
+}
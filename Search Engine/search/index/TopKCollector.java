@@ -0,0 +1,152 @@
+package search.index;
+
+import datastructures.concrete.DoubleLinkedList;
+import datastructures.interfaces.IList;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the k best scoring documents offered to it, in a binary min-heap stored in
+ * two plain arrays (ids and scores), so collecting barely allocates anything. A
+ * ScoredDocument is only made for each of the final k documents, by toList().
+ *
+ * k comes straight from the user, and is often far larger than the number of
+ * documents that will ever be offered, so the arrays start small and double in
+ * size as needed (up to k), like those of ArrayHeap.
+ *
+ * Once k documents have been collected, a document only gets in by scoring more
+ * than the worst of them (see getThreshold()), which then drops out.
+ */
+public class TopKCollector {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int k;
+    private int[] documents;
+    private double[] scores;
+    private int size;
+
+    /**
+     * @throws IllegalArgumentException  if k < 0
+     */
+    public TopKCollector(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.k = k;
+        this.documents = new int[Math.min(k, INITIAL_CAPACITY)];
+        this.scores = new double[this.documents.length];
+        this.size = 0;
+    }
+
+    /**
+     * Returns the number of documents collected so far (at most k).
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns 'true' if k documents have been collected.
+     */
+    public boolean isFull() {
+        return this.size == this.k;
+    }
+
+    /**
+     * Returns the score a document must beat to be collected: the score of the worst
+     * collected document once k of them have been collected, and negative infinity
+     * before that.
+     */
+    public double getThreshold() {
+        return this.isFull() && this.size > 0 ? this.scores[0] : Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Collects the given document, if it scores more than the threshold.
+     *
+     * @return 'true' if the document was collected
+     */
+    public boolean offer(int document, double score) {
+        if (this.k == 0) {
+            return false;
+        }
+        if (!this.isFull()) {
+            if (this.size == this.documents.length) {
+                this.grow();
+            }
+            // Sift the new document up from the bottom of the heap.
+            int i = this.size;
+            while (i > 0 && this.scores[(i - 1) / 2] > score) {
+                this.documents[i] = this.documents[(i - 1) / 2];
+                this.scores[i] = this.scores[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            this.documents[i] = document;
+            this.scores[i] = score;
+            this.size++;
+            return true;
+        }
+        if (score <= this.scores[0]) {
+            return false;
+        }
+        this.replaceMin(document, score);
+        return true;
+    }
+
+    /**
+     * Returns the collected documents, sorted from best to worst, and empties the
+     * collector.
+     */
+    public IList<ScoredDocument> toList() {
+        IList<ScoredDocument> output = new DoubleLinkedList<>();
+        while (this.size > 0) {
+            output.insert(0, new ScoredDocument(this.documents[0], this.scores[0]));
+            this.removeMin();
+        }
+        return output;
+    }
+
+    /**
+     * Doubles the size of the arrays, without going over k.
+     */
+    private void grow() {
+        int capacity = (int) Math.min(this.k, 2L * this.documents.length);
+        this.documents = Arrays.copyOf(this.documents, capacity);
+        this.scores = Arrays.copyOf(this.scores, capacity);
+    }
+
+    /**
+     * Drops the worst collected document.
+     */
+    private void removeMin() {
+        this.size--;
+        if (this.size > 0) {
+            this.replaceMin(this.documents[this.size], this.scores[this.size]);
+        }
+    }
+
+    /**
+     * Replaces the worst collected document with the given one, which is then
+     * sifted down the heap to its place.
+     */
+    private void replaceMin(int document, double score) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= this.size) {
+                break;
+            }
+            if (child + 1 < this.size && this.scores[child + 1] < this.scores[child]) {
+                child++;
+            }
+            if (this.scores[child] >= score) {
+                break;
+            }
+            this.documents[i] = this.documents[child];
+            this.scores[i] = this.scores[child];
+            i = child;
+        }
+        this.documents[i] = document;
+        this.scores[i] = score;
+    }
+}
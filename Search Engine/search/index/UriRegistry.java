@@ -0,0 +1,158 @@
+package search.index;
+
+import datastructures.concrete.dictionaries.ChainedHashDictionary;
+import datastructures.interfaces.IDictionary;
+import datastructures.interfaces.IList;
+import misc.exceptions.NoSuchKeyException;
+import search.misc.WebUtils;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Interns uris: every distinct normalized uri (see WebUtils.normalize) is kept
+ * as a single URI object and given an int id, which never changes for as long as
+ * the registry exists. Ids are dense (0, 1, 2, ...), so data about uris can be kept
+ * in plain arrays, and two uris can be compared by comparing their ids.
+ *
+ * Only normalized uris are kept: a uri in any other form is normalized every time
+ * it is interned. Links are almost always normalized already (see
+ * WebUtils.extractLinks), so this is rarely needed.
+ *
+ * Unlike IdRegistry, this is safe to use from several threads at once. A registry
+ * never forgets a uri, so each one should only be used for a single job, such as
+ * matching up the links of the pages of an index being built, and dropped with it.
+ */
+public class UriRegistry {
+    // Maps normalized uris to ids.
+    private final IDictionary<String, Integer> ids;
+    private URI[] uris;
+    private int size;
+
+    public UriRegistry() {
+        this.ids = new ChainedHashDictionary<>();
+        this.uris = new URI[16];
+        this.size = 0;
+    }
+
+    /**
+     * Returns the id of the given uri once normalized, assigning it the next free
+     * id if it has never been interned before, or -1 if it cannot be normalized.
+     */
+    public int intern(URI uri) {
+        String form = uri.toString();
+        synchronized (this) {
+            Integer id = this.ids.getOrDefault(form, null);
+            if (id != null) {
+                return id;
+            }
+        }
+
+        // Normalizing is the slow part, so other threads need not wait for it.
+        Optional<URI> normalized = WebUtils.normalize(uri);
+        if (!normalized.isPresent()) {
+            return -1;
+        }
+        synchronized (this) {
+            return this.register(normalized.get());
+        }
+    }
+
+    /**
+     * Same as above, but takes the uri as a string, which is only parsed if it is
+     * not a normalized uri interned before. Returns -1 if it is not a valid uri.
+     */
+    public int intern(String uri) {
+        int id = this.getIdOrDefault(uri);
+        if (id >= 0) {
+            return id;
+        }
+        try {
+            return this.intern(new URI(uri));
+        } catch (URISyntaxException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the sorted ids of the distinct uris of the given list, interning
+     * them as needed. Uris that cannot be normalized are left out.
+     */
+    public int[] internAll(IList<URI> uris) {
+        int[] output = new int[uris.size()];
+        int count = 0;
+        for (URI uri : uris) {
+            int id = this.intern(uri);
+            if (id >= 0) {
+                output[count] = id;
+                count++;
+            }
+        }
+        Arrays.sort(output, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || output[i] != output[distinct - 1]) {
+                output[distinct] = output[i];
+                distinct++;
+            }
+        }
+        return distinct == output.length ? output : Arrays.copyOf(output, distinct);
+    }
+
+    /**
+     * Gives the given normalized uri the next free id, unless it already has one.
+     */
+    private int register(URI uri) {
+        String form = uri.toString();
+        Integer id = this.ids.getOrDefault(form, null);
+        if (id != null) {
+            return id;
+        }
+        if (this.size == this.uris.length) {
+            this.uris = Arrays.copyOf(this.uris, this.size * 2);
+        }
+        this.uris[this.size] = uri;
+        this.ids.put(form, this.size);
+        this.size++;
+        return this.size - 1;
+    }
+
+    /**
+     * Returns the id of the given normalized uri.
+     *
+     * @throws NoSuchKeyException  if the uri has not been interned
+     */
+    public synchronized int getId(String uri) {
+        return this.ids.get(uri);
+    }
+
+    /**
+     * Returns the id of the given normalized uri, or -1 if it has not been interned.
+     */
+    public synchronized int getIdOrDefault(String uri) {
+        return this.ids.getOrDefault(uri, -1);
+    }
+
+    /**
+     * Returns the normalized uri with the given id. Interning a uri equal to it
+     * always returns this very object.
+     *
+     * @throws IndexOutOfBoundsException  if no uri has the given id
+     */
+    public synchronized URI getUri(int id) {
+        if (id < 0 || id >= this.size) {
+            throw new IndexOutOfBoundsException();
+        }
+        return this.uris[id];
+    }
+
+    /**
+     * Returns the number of normalized uris interned so far. Ids range from 0 up to
+     * (but not including) this number.
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+}
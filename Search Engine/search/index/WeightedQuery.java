@@ -0,0 +1,130 @@
+package search.index;
+
+import datastructures.concrete.KVPair;
+import datastructures.concrete.dictionaries.ChainedHashDictionary;
+import datastructures.interfaces.IDictionary;
+import datastructures.interfaces.IList;
+
+/**
+ * The words of a query that appear in some index, each with a weight chosen so
+ * that the cosine similarity between the query and a document is
+ *
+ *     sum over the words of (weight of word) * (frequency of word in the
+ *     document) / (length of the document * norm of the document)
+ *
+ * That is, the weight of a word is its TF-IDF score in the query, scaled by its
+ * IDF score once more (for the document side) and divided by the query's norm.
+ * A word repeated in the query contributes once per occurrence.
+ */
+public class WeightedQuery {
+    private final int[] termIds;
+    private final double[] weights;
+
+    private WeightedQuery(int[] termIds, double[] weights) {
+        this.termIds = termIds;
+        this.weights = weights;
+    }
+
+    /**
+     * Returns the weighted version of the given query against the given index,
+     * using the index's own IDF scores.
+     */
+    public static WeightedQuery of(IList<String> query, SearchIndex index) {
+        return of(query, index, null);
+    }
+
+    /**
+     * Returns the weighted version of the given query against the given index,
+     * using the given IDF scores instead of the index's own. Words without an
+     * IDF score are treated as if they were in no document at all.
+     *
+     * Every word with an IDF score counts towards the query's norm, even if this
+     * particular index does not contain it, so the scores of documents from
+     * different indexes sharing the same IDF scores can be compared directly.
+     */
+    public static WeightedQuery of(IList<String> query, SearchIndex index,
+                                   IDictionary<String, Double> idfScores) {
+        IDictionary<String, Integer> counts = new ChainedHashDictionary<>();
+        for (String word : query) {
+            counts.put(word, counts.getOrDefault(word, 0) + 1);
+        }
+
+        // Compute the query's TF-IDF vector; words missing from the index have a
+        // score of zero and so do not affect the norm.
+        int[] termIds = new int[counts.size()];
+        double[] weights = new double[counts.size()];
+        double squaredNorm = 0.0;
+        int size = 0;
+        for (KVPair<String, Integer> pair : counts) {
+            String word = pair.getKey();
+            int termId = index.getTermId(word);
+            double idf;
+            if (idfScores == null) {
+                if (termId < 0) {
+                    continue;
+                }
+                idf = index.getIdf(termId);
+            } else {
+                if (!idfScores.containsKey(word)) {
+                    continue;
+                }
+                idf = idfScores.get(word);
+            }
+
+            double tf = pair.getValue() / (double) query.size();
+            double tfIdf = tf * idf;
+            squaredNorm += tfIdf * tfIdf;
+            if (termId >= 0) {
+                termIds[size] = termId;
+                weights[size] = pair.getValue() * tfIdf * idf;
+                size++;
+            }
+        }
+
+        double norm = Math.sqrt(squaredNorm);
+        if (norm == 0) {
+            return new WeightedQuery(new int[0], new double[0]);
+        }
+        int[] outputIds = new int[size];
+        double[] outputWeights = new double[size];
+        for (int i = 0; i < size; i++) {
+            outputIds[i] = termIds[i];
+            outputWeights[i] = weights[i] / norm;
+        }
+        return new WeightedQuery(outputIds, outputWeights);
+    }
+
+    /**
+     * Returns the number of distinct words in this query.
+     */
+    public int size() {
+        return this.termIds.length;
+    }
+
+    public int getTermId(int i) {
+        return this.termIds[i];
+    }
+
+    public double getWeight(int i) {
+        return this.weights[i];
+    }
+
+    /**
+     * Returns the cosine similarity between this query and the given document.
+     */
+    public double computeRelevance(SearchIndex index, int documentId) {
+        double norm = index.getDocumentNorm(documentId);
+        if (norm == 0) {
+            return 0.0;
+        }
+        double numerator = 0.0;
+        for (int i = 0; i < this.termIds.length; i++) {
+            PostingList.Cursor cursor = index.getPostings(this.termIds[i]).cursor();
+            cursor.advance(documentId);
+            if (cursor.document() == documentId) {
+                numerator += this.weights[i] * cursor.frequency();
+            }
+        }
+        return numerator / (index.getDocumentLength(documentId) * norm);
+    }
+}
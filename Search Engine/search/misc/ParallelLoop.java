@@ -0,0 +1,79 @@
+package search.misc;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a loop over the indices 0 to size - 1 on a ForkJoinPool, one chunk of
+ * consecutive indices at a time.
+ *
+ * The indices are always cut into the same chunks, no matter how many threads
+ * the pool has. So code that computes a partial result per chunk and then combines
+ * them in chunk order gets exactly the same output on one thread as on many.
+ */
+public class ParallelLoop {
+    @FunctionalInterface
+    public interface ChunkBody {
+        /**
+         * Handles the indices from 'start' up to (but not including) 'end', which
+         * make up the chunk-th chunk.
+         */
+        void run(int chunk, int start, int end);
+    }
+
+    /**
+     * Returns the number of chunks the indices 0 to size - 1 are cut into.
+     */
+    public static int countChunks(int size, int chunkSize) {
+        if (size < 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+        return (size + chunkSize - 1) / chunkSize;
+    }
+
+    /**
+     * Runs the body on every chunk in the given pool, returning once all of them
+     * are done. Any exception thrown by the body is rethrown here.
+     */
+    public static void forEachChunk(ForkJoinPool pool, int size, int chunkSize, ChunkBody body) {
+        int chunkCount = countChunks(size, chunkSize);
+        if (chunkCount > 0) {
+            pool.invoke(new ChunkTask(body, size, chunkSize, 0, chunkCount));
+        }
+    }
+
+    /**
+     * Handles the chunks from 'first' up to (but not including) 'last', splitting
+     * them in half until only one is left.
+     */
+    private static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ChunkBody body;
+        private final int size;
+        private final int chunkSize;
+        private final int first;
+        private final int last;
+
+        public ChunkTask(ChunkBody body, int size, int chunkSize, int first, int last) {
+            this.body = body;
+            this.size = size;
+            this.chunkSize = chunkSize;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.last - this.first == 1) {
+                int start = this.first * this.chunkSize;
+                this.body.run(this.first, start, Math.min(start + this.chunkSize, this.size));
+            } else {
+                int middle = (this.first + this.last) >>> 1;
+                invokeAll(
+                        new ChunkTask(this.body, this.size, this.chunkSize, this.first, middle),
+                        new ChunkTask(this.body, this.size, this.chunkSize, middle, this.last));
+            }
+        }
+    }
+}
@@ -5,9 +5,11 @@ import datastructures.interfaces.IList;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
+import search.index.UriRegistry;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
 import java.util.Optional;
 
 public class WebUtils {
@@ -30,6 +32,24 @@ public class WebUtils {
         return out;
     }
 
+    /**
+     * Same as above, but returns the ids the links have in the given UriRegistry
+     * (interning them as needed), in the order in which they appear.
+     */
+    public static int[] extractLinkIds(URI rootUri, Document doc, UriRegistry uris) {
+        IList<URI> links = WebUtils.extractLinks(rootUri, doc);
+        int[] out = new int[links.size()];
+        int count = 0;
+        for (URI link : links) {
+            int id = uris.intern(link);
+            if (id >= 0) {
+                out[count] = id;
+                count++;
+            }
+        }
+        return Arrays.copyOf(out, count);
+    }
+
     public static Optional<URI> normalize(URI uri) {
         try {
             return Optional.of(new URI(
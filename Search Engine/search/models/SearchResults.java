@@ -0,0 +1,34 @@
+package search.models;
+
+import datastructures.interfaces.IList;
+
+/**
+ * Represents the results of a search, along with whether they are complete.
+ *
+ * Results are partial when the search ran out of time: they are then the best
+ * pages among those the search got to look at, which may not be the best pages
+ * overall (and may have lower scores than they should).
+ */
+public class SearchResults {
+    private IList<Result> results;
+    private boolean isPartial;
+
+    public SearchResults(IList<Result> results, boolean isPartial) {
+        this.results = results;
+        this.isPartial = isPartial;
+    }
+
+    /**
+     * Returns the results, best first.
+     */
+    public IList<Result> getResults() {
+        return this.results;
+    }
+
+    /**
+     * Returns 'true' if the search stopped before looking at every page.
+     */
+    public boolean isPartial() {
+        return this.isPartial;
+    }
+}
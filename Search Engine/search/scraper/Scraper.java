@@ -4,6 +4,7 @@ import datastructures.concrete.ArrayHeap;
 import datastructures.concrete.ChainedHashSet;
 import datastructures.interfaces.IPriorityQueue;
 import datastructures.interfaces.ISet;
+import search.index.UriRegistry;
 import search.misc.WebUtils;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.jsoup.Jsoup;
@@ -19,13 +20,15 @@ import java.io.PrintWriter;
 import java.net.URISyntaxException;
 import java.net.URI;
 import java.nio.file.Path;
-import java.util.Optional;
+import java.util.Arrays;
 
 public class Scraper {
     private Path outputPath;
     private IPriorityQueue<PendingUri> pendingUris;
     private ISet<String> domainWhitelist;
-    private ISet<URI> alreadyEncountered;
+    private UriRegistry uris;
+    // Indexed by the ids of the uris in 'uris'.
+    private boolean[] alreadyEncountered;
     private HttpRequester requester;
 
     public Scraper(Path outputPath) {
@@ -33,15 +36,16 @@ public class Scraper {
         this.pendingUris = new ArrayHeap<>();
         this.domainWhitelist = new ChainedHashSet<>();
         this.requester = new HttpRequester();
-        this.alreadyEncountered = new ChainedHashSet<>();
+        this.uris = new UriRegistry();
+        this.alreadyEncountered = new boolean[16];
     }
 
     public Scraper addSeedUri(URI uri) {
-        Optional<URI> normalizedUri = WebUtils.normalize(uri);
-        if (!normalizedUri.isPresent()) {
+        int id = this.uris.intern(uri);
+        if (id < 0) {
             throw new IllegalArgumentException("URI is malformed: " + uri);
         }
-        this.pendingUris.insert(new PendingUri(0, normalizedUri.get()));
+        this.pendingUris.insert(new PendingUri(0, id));
         return this;
     }
 
@@ -63,8 +67,8 @@ public class Scraper {
             while (limitCount < limit && !this.pendingUris.isEmpty()) {
                 // Handle page
                 PendingUri pending = this.pendingUris.removeMin();
-                URI uri = pending.uri;
-                this.alreadyEncountered.add(uri);
+                URI uri = this.uris.getUri(pending.id);
+                this.markEncountered(pending.id);
 
                 // Skip invalid pages
                 if (!this.domainWhitelist.contains(uri.getHost())) {
@@ -72,7 +76,7 @@ public class Scraper {
                     continue;
                 }
 
-                String body = this.requester.makeRequest(pending.uri);
+                String body = this.requester.makeRequest(uri);
                 if (body == null) {
                     System.out.println(String.format("Unable to fetch content from '%s'", uri));
                     continue;
@@ -85,11 +89,9 @@ public class Scraper {
 
                 // Add children (if applicable)
                 Document document = Jsoup.parse(body);
-                for (URI link : WebUtils.extractLinks(uri, document)) {
-                    Optional<URI> normalizedUri = WebUtils.normalize(link);
-
-                    if (normalizedUri.isPresent() && !this.alreadyEncountered.contains(link)) {
-                        this.pendingUris.insert(new PendingUri(pending.distance + 1, normalizedUri.get()));
+                for (int link : WebUtils.extractLinkIds(uri, document, this.uris)) {
+                    if (!this.isEncountered(link)) {
+                        this.pendingUris.insert(new PendingUri(pending.distance + 1, link));
                     }
                 }
 
@@ -130,23 +132,38 @@ public class Scraper {
             try (BufferedReader reader = new BufferedReader(new FileReader(saveFile))) {
                 String line = reader.readLine();
                 while (line != null) {
-                    this.alreadyEncountered.add(URI.create(line.trim()));
+                    int id = this.uris.intern(line.trim());
+                    if (id >= 0) {
+                        this.markEncountered(id);
+                    }
                     line = reader.readLine();
                 }
             }
         }
     }
 
+    private boolean isEncountered(int id) {
+        return id < this.alreadyEncountered.length && this.alreadyEncountered[id];
+    }
+
+    private void markEncountered(int id) {
+        if (id >= this.alreadyEncountered.length) {
+            this.alreadyEncountered = Arrays.copyOf(this.alreadyEncountered,
+                    Math.max(id + 1, this.alreadyEncountered.length * 2));
+        }
+        this.alreadyEncountered[id] = true;
+    }
+
     private static class PendingUri implements Comparable<PendingUri> {
         public final int distance;
-        public final URI uri;
+        public final int id;
 
-        public PendingUri(int distance, URI uri) {
-            if (uri == null) {
+        public PendingUri(int distance, int id) {
+            if (id < 0) {
                 throw new IllegalArgumentException();
             }
             this.distance = distance;
-            this.uri = uri;
+            this.id = id;
         }
 
         public int compareTo(PendingUri other) {